@@ -18,6 +18,7 @@ package klim.dclined;
 import com.google.common.base.Supplier;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.google.protobuf.ByteString;
 import io.dgraph.DgraphGrpc.DgraphStub;
 import io.dgraph.DgraphProto;
@@ -29,12 +30,21 @@ import io.grpc.StatusRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
 
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
 
 /**
  * This is an abstract client that defines the general interactions. The extending classes
@@ -49,6 +59,16 @@ public abstract class AbstractClient {
 
     protected static final Gson PARSER = new Gson();
 
+    /**
+     * Default size of JSON mutations that iterables of objects are split into.
+     */
+    public static final int DEFAULT_JSON_CHUNK_BYTES = 1 << 20;
+
+    /**
+     * Allowance for the fields of a query response other than its JSON when limiting the inbound message size.
+     */
+    private static final int RESPONSE_OVERHEAD_BYTES = 64 * 1024;
+
     /**
      * Retrieves the state of transaction that defines scope for the operation being invoked.
      *
@@ -57,11 +77,12 @@ public abstract class AbstractClient {
     abstract TransactionState getState();
 
     /**
-     * Retrieves GRPC stub to be used for invocation.
+     * Retrieves GRPC stub to be used for invocation of the given operation type.
      *
+     * @param type
      * @return
      */
-    abstract DgraphStub getStub();
+    abstract DgraphStub getStub(OperationType type);
 
     /**
      * This is a call back that is invoked upon the completion of remote operations.
@@ -71,9 +92,82 @@ public abstract class AbstractClient {
      */
     abstract void mergeContext(TxnContext conext);
 
+    /**
+     * Retrieves the listener that should be notified about the timings of remote operations.
+     *
+     * @return
+     */
+    abstract MetricsListener getMetrics();
+
+    /**
+     * Retrieves the log capturing slow operations or null if slow operations should not be captured.
+     *
+     * @return
+     */
+    abstract SlowOperationLog getSlowOperationLog();
+
+    /**
+     * Retrieves the compression settings of requests or null if requests should not be compressed.
+     *
+     * @return
+     */
+    abstract Compression getCompression();
+
+    /**
+     * Retrieves the lin read watermarks of the client, shared by all its transactions.
+     *
+     * @return
+     */
+    abstract LinReadWatermarks getLinReadWatermarks();
+
+    /**
+     * Retrieves the default response size budget of queries or 0 if responses are not limited.
+     *
+     * @return
+     */
+    abstract int getMaxResponseBytes();
+
+    /**
+     * Retrieves the priority class of the operations of this client.
+     *
+     * @return
+     */
+    abstract Priority getPriority();
+
+    /**
+     * Retrieves the dispatcher limiting the operations in flight, shared by all the views of the client.
+     *
+     * @return
+     */
+    abstract PriorityDispatcher getDispatcher();
+
+    /**
+     * Retrieves stub for the operation of the given type, compressing the request if its payload is large enough.
+     *
+     * @param type
+     * @param payloadBytes
+     * @return
+     */
+    DgraphStub getStub(OperationType type, int payloadBytes) {
+        DgraphStub stub = getStub(type);
+        Compression compression = getCompression();
+        return compression == null ? stub : compression.apply(stub, payloadBytes);
+    }
+
+    /**
+     * Retrieves client whose operations all read at the same start timestamp.
+     *
+     * @return
+     */
+    abstract AbstractClient snapshot();
+
     abstract Mutation newMutation(BiConsumer<Mutation.Builder, NQuad> aggregator, NQuad... nQuads);
 
-    abstract Mutation newMutation(BiConsumer<Mutation.Builder, ByteString> stringNQuadSetter, String nQuads);
+    abstract Mutation newPayloadMutation(BiConsumer<Mutation.Builder, ByteString> payloadSetter, ByteString payload);
+
+    Mutation newPayloadMutation(BiConsumer<Mutation.Builder, ByteString> stringNQuadSetter, String nQuads) {
+        return newPayloadMutation(stringNQuadSetter, ByteString.copyFromUtf8(nQuads));
+    }
 
     /**
      * Executes the supplied query with the supplied variables. Example usage:
@@ -96,27 +190,221 @@ public abstract class AbstractClient {
      * @return
      */
     public <T> CompletableFuture<T> query(String query, Map<String, String> variables, TypeToken<T> type) {
+        return execute(query, variables, (DgraphProto.Response response) -> decode(response.getJson(), type));
+    }
+
+    /**
+     * Executes the supplied query, failing with {@link ResponseTooLargeException} if its JSON response is larger
+     * than the given budget. The response is rejected as soon as it is received, before it is decoded.
+     *
+     * @param query
+     * @param variables
+     * @param type             - TypeToken with the generic type of the expected result. The deserialisation will be handled automatically.
+     * @param maxResponseBytes - response size budget overriding the default one of the client, 0 for no limit
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> query(String query, Map<String, String> variables, TypeToken<T> type, int maxResponseBytes) {
+        return execute(query, variables, maxResponseBytes, (DgraphProto.Response response) -> decode(response.getJson(), type));
+    }
+
+    /**
+     * Executes the supplied query and, if its response exceeds the budget, executes it again page by page at one
+     * start timestamp, folding the decoded pages with the stitch function. The query must declare the variables
+     * {@code $first: int} and {@code $after: string} and use them to paginate its first block, e.g.
+     * <pre>
+     * String query = "query people($first: int, $after: string) {
+     *      people(func: has(person.email), first: $first, after: $after) {
+     *          uid
+     *          person.email
+     *      }
+     * }";
+     *
+     * client.queryPaged(query, emptyMap(), PeopleResponse.class, 16 * 1024 * 1024, 10_000, PeopleResponse::concat);
+     * </pre>
+     *
+     * @param query
+     * @param variables
+     * @param type             - TypeToken with the generic type of the expected result of every page.
+     * @param maxResponseBytes - response size budget of the whole query and of every page, 0 for no limit
+     * @param pageSize         - number of nodes of the first block requested per page
+     * @param stitch           - combines the results stitched so far with the result of the next page
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> queryPaged(String query, Map<String, String> variables, TypeToken<T> type,
+                                               int maxResponseBytes, int pageSize, BinaryOperator<T> stitch) {
+        Map<String, String> whole = new HashMap<>(variables);
+        whole.put(PagedQuery.FIRST, String.valueOf(Integer.MAX_VALUE));
+        whole.put(PagedQuery.AFTER, Uids.format(0));
+        return query(query, whole, type, maxResponseBytes)
+                .handle((T result, Throwable throwable) -> {
+                    if (throwable == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof ResponseTooLargeException) {
+                        LOG.debug("Response exceeded {} bytes, paging by {}: {}", maxResponseBytes, pageSize, query);
+                        return new PagedQuery<>(snapshot(), query, variables, type, maxResponseBytes, pageSize, stitch).execute();
+                    }
+                    CompletableFuture<T> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(throwable);
+                    return failed;
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Executes the supplied query and converts the raw response with the given decoder.
+     * The decoding time is reported as part of the query metrics.
+     *
+     * @param query
+     * @param variables
+     * @param decoder
+     * @param <T>
+     * @return
+     */
+    <T> CompletableFuture<T> execute(String query, Map<String, String> variables, Function<DgraphProto.Response, T> decoder) {
+        return execute(query, variables, getMaxResponseBytes(), decoder);
+    }
+
+    /**
+     * Executes the supplied query within the given response size budget and converts the raw response with the given decoder.
+     *
+     * @param query
+     * @param variables
+     * @param maxResponseBytes - 0 for no limit
+     * @param decoder
+     * @param <T>
+     * @return
+     */
+    <T> CompletableFuture<T> execute(String query, Map<String, String> variables, int maxResponseBytes,
+                                     Function<DgraphProto.Response, T> decoder) {
+        long invoked = System.nanoTime();
         TransactionState state = getState();
+        MetricsListener metrics = getMetrics();
 
-        DgraphProto.Request request = DgraphProto.Request.newBuilder()
+        LinReadWatermarks watermarks = getLinReadWatermarks();
+
+        DgraphProto.Request.Builder builder = DgraphProto.Request.newBuilder()
                 .setQuery(query)
                 .putAllVars(variables)
-                .setStartTs(state.getStartTs())
-                .build();
+                .setStartTs(state.getStartTs());
+        DgraphProto.LinRead linRead = watermarks.get();
+        if (linRead.getIdsCount() > 0) {
+            builder.setLinRead(linRead);
+        }
+        DgraphProto.Request request = builder.build();
 
-        StreamObserverBridge<DgraphProto.Response> bridge = new StreamObserverBridge<>();
-        getStub().query(request, bridge);
+        return dispatch(OperationType.QUERY, (Long sent) -> {
+            StreamObserverBridge<DgraphProto.Response> bridge = new StreamObserverBridge<>();
+            DgraphStub stub = getStub(OperationType.QUERY, request.getSerializedSize());
+            if (maxResponseBytes > 0) {
+                stub = stub.withMaxInboundMessageSize((int) Math.min(Integer.MAX_VALUE, (long) maxResponseBytes + RESPONSE_OVERHEAD_BYTES));
+            }
+            stub.query(request, bridge);
+            return bridge.getDelegate()
+                    .handle((DgraphProto.Response response, Throwable throwable) -> {
+                        if (maxResponseBytes > 0) {
+                            checkResponseSize(query, response, throwable, maxResponseBytes);
+                        }
+                        if (throwable != null) {
+                            throw throwable instanceof CompletionException
+                                    ? (CompletionException) throwable
+                                    : new CompletionException(throwable);
+                        }
+                        return response;
+                    })
+                    .thenApply((DgraphProto.Response response) -> {
+                        long received = System.nanoTime();
+                        watermarks.merge(response.getTxn().getLinRead());
+                        mergeContext(response.getTxn());
+
+                        T result = decoder.apply(response);
+                        long decoded = System.nanoTime();
+
+                        metrics.onCall(OperationType.QUERY, received - sent, request.getSerializedSize(), response.getSerializedSize());
+                        recordLatency(metrics, OperationType.QUERY, response.getLatency());
+                        metrics.onDecode(OperationType.QUERY, decoded - received);
+
+                        SlowOperationLog slowLog = getSlowOperationLog();
+                        if (slowLog != null && slowLog.shouldCapture(decoded - invoked)) {
+                            slowLog.capture(OperationType.QUERY, query, variables, response.getTxn().getStartTs(),
+                                    request.getSerializedSize(), response.getSerializedSize(), response.getLatency(),
+                                    sent - invoked, received - sent, decoded - received);
+                        }
+                        return result;
+                    });
+        });
+    }
 
-        return bridge.getDelegate()
-                .thenApply((DgraphProto.Response response) -> {
-                    mergeContext(response.getTxn());
+    /**
+     * Sends the operation once the dispatcher lets it through and keeps it counted in flight until it completes.
+     *
+     * @param type
+     * @param call - sends the request, given the time it was let through
+     * @param <T>
+     * @return
+     */
+    <T> CompletableFuture<T> dispatch(OperationType type, Function<Long, CompletableFuture<T>> call) {
+        PriorityDispatcher dispatcher = getDispatcher();
+        Priority priority = getPriority();
+        long queued = System.nanoTime();
+        return dispatcher.acquire(priority).thenCompose((Long sent) -> {
+            getMetrics().onQueue(type, priority, sent - queued);
+            CompletableFuture<T> response;
+            try {
+                response = call.apply(sent);
+            } catch (RuntimeException e) {
+                dispatcher.release();
+                throw e;
+            }
+            return response.whenComplete((T result, Throwable throwable) -> dispatcher.release());
+        });
+    }
 
-                    String utf8Str = response.getJson().toStringUtf8();
-                    if (String.class.isAssignableFrom(type.getRawType())) {
-                        return (T) utf8Str;
-                    }
-                    return PARSER.fromJson(utf8Str, type.getType());
-                });
+    static void checkResponseSize(String query, DgraphProto.Response response, Throwable throwable, int maxResponseBytes) {
+        if (throwable != null) {
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof StatusRuntimeException && isMessageTooLarge(((StatusRuntimeException) cause).getStatus())) {
+                throw new ResponseTooLargeException(query, -1, maxResponseBytes);
+            }
+        } else if (response != null && response.getJson().size() > maxResponseBytes) {
+            throw new ResponseTooLargeException(query, response.getJson().size(), maxResponseBytes);
+        }
+    }
+
+    /**
+     * Tells whether the status is the failure of GRPC to receive a message over the max inbound message size,
+     * as opposed to other exhausted resources such as server quotas.
+     *
+     * @param status
+     * @return
+     */
+    private static boolean isMessageTooLarge(Status status) {
+        return status.getCode() == Status.Code.RESOURCE_EXHAUSTED
+                && status.getDescription() != null
+                && status.getDescription().contains("message exceeds maximum size");
+    }
+
+    /**
+     * Deserialises the supplied JSON to the given type.
+     *
+     * @param json
+     * @param type
+     * @param <T>
+     * @return
+     */
+    protected <T> T decode(ByteString json, TypeToken<T> type) {
+        String utf8Str = json.toStringUtf8();
+        if (String.class.isAssignableFrom(type.getRawType())) {
+            return (T) utf8Str;
+        }
+        return PARSER.fromJson(utf8Str, type.getType());
+    }
+
+    protected static void recordLatency(MetricsListener metrics, OperationType type, DgraphProto.Latency latency) {
+        metrics.onServerLatency(type, latency.getParsingNs(), latency.getProcessingNs(), latency.getEncodingNs());
     }
 
 
@@ -172,6 +460,56 @@ public abstract class AbstractClient {
         return query(query.getQuery(), query.getVariables(), TypeToken.get(type));
     }
 
+    /**
+     * Executes the compiled query with the given variables, see {@link QueryBuilder}.
+     *
+     * @param template
+     * @param variables - values by variable name including the leading $
+     * @param type      - TypeToken with the generic type of the expected result. The deserialisation will be handled automatically.
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> query(QueryTemplate template, Map<String, String> variables, TypeToken<T> type) {
+        Query query = template.bind(variables);
+        return query(query.getQuery(), query.getVariables(), type);
+    }
+
+    /**
+     * Executes the compiled query with the given variables, see {@link QueryBuilder}.
+     *
+     * @param template
+     * @param variables - values by variable name including the leading $
+     * @param type      - Class of the type of the expected result. The deserialisation will be handled automatically.
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> query(QueryTemplate template, Map<String, String> variables, Class<T> type) {
+        return query(template, variables, TypeToken.get(type));
+    }
+
+    /**
+     * Executes the supplied query and decodes the nodes of its first block into columns of primitive arrays,
+     * without creating an object per node, see {@link ResultColumns}.
+     *
+     * @param query
+     * @param variables
+     * @param columns
+     * @return
+     */
+    public CompletableFuture<ResultTable> queryTable(String query, Map<String, String> variables, ResultColumns columns) {
+        return execute(query, variables, (DgraphProto.Response response) -> ColumnarDecoder.decode(response.getJson(), columns));
+    }
+
+    /**
+     * Starts traversal of the graph from the supplied nodes, see {@link Traversal}.
+     *
+     * @param startUids
+     * @return
+     */
+    public Traversal traverse(long... startUids) {
+        return new Traversal(this, startUids);
+    }
+
     /**
      * Executes the supplied mutation.
      *
@@ -179,31 +517,48 @@ public abstract class AbstractClient {
      * @return
      */
     protected CompletableFuture<Map<String, String>> mutate(Mutation mutation) {
-        StreamObserverBridge<DgraphProto.Assigned> bridge = new StreamObserverBridge<>();
-        DgraphStub stub = getStub();
-        stub.mutate(mutation, bridge);
-        return bridge.getDelegate()
-                .handle((DgraphProto.Assigned assigned, Throwable throwable) -> {
-                    if (throwable != null) {
-                        // IMPORTANT: the discard is asynchronous meaning that the remote
-                        // transaction may or may not be cancelled when this CompletionStage finishes.
-                        // All errors occurring during the discard are ignored.
-                        abort(stub);
-                        throw launderException(throwable);
-                    } else {
-                        mergeContext(assigned.getContext());
-                        return assigned.getUidsMap();
-                    }
-                });
+        long invoked = System.nanoTime();
+        DgraphStub stub = getStub(OperationType.MUTATE, mutation.getSerializedSize());
+        MetricsListener metrics = getMetrics();
+        return dispatch(OperationType.MUTATE, (Long sent) -> {
+            StreamObserverBridge<DgraphProto.Assigned> bridge = new StreamObserverBridge<>();
+            stub.mutate(mutation, bridge);
+            return bridge.getDelegate()
+                    .handle((DgraphProto.Assigned assigned, Throwable throwable) -> {
+                        if (throwable != null) {
+                            // IMPORTANT: the discard is asynchronous meaning that the remote
+                            // transaction may or may not be cancelled when this CompletionStage finishes.
+                            // All errors occurring during the discard are ignored.
+                            abort(stub);
+                            throw launderException(OperationType.MUTATE, throwable);
+                        } else {
+                            long received = System.nanoTime();
+                            getLinReadWatermarks().merge(assigned.getContext().getLinRead());
+                            mergeContext(assigned.getContext());
+
+                            metrics.onCall(OperationType.MUTATE, received - sent, mutation.getSerializedSize(), assigned.getSerializedSize());
+                            recordLatency(metrics, OperationType.MUTATE, assigned.getLatency());
+
+                            SlowOperationLog slowLog = getSlowOperationLog();
+                            if (slowLog != null && slowLog.shouldCapture(received - invoked)) {
+                                slowLog.capture(OperationType.MUTATE, null, null, assigned.getContext().getStartTs(),
+                                        mutation.getSerializedSize(), assigned.getSerializedSize(), assigned.getLatency(),
+                                        sent - invoked, received - sent, 0);
+                            }
+                            return assigned.getUidsMap();
+                        }
+                    });
+        });
     }
 
-    protected RuntimeException launderException(Throwable ex) {
+    protected RuntimeException launderException(OperationType type, Throwable ex) {
         if (ex instanceof StatusRuntimeException) {
             StatusRuntimeException statusRuntimeEx = (StatusRuntimeException) ex;
             Status.Code code = statusRuntimeEx.getStatus().getCode();
             String desc = statusRuntimeEx.getStatus().getDescription();
 
             if (code.equals(Status.Code.ABORTED)) {
+                getMetrics().onAbort(type);
                 return new TransactionAbortedException(desc);
             }
         }
@@ -222,8 +577,18 @@ public abstract class AbstractClient {
      * @return
      */
     protected CompletableFuture<Void> abort(DgraphStub stub) {
-        TransactionState state = getState();
+        return abort(stub, getState(), getMetrics());
+    }
 
+    /**
+     * Aborts the transaction in the given state, even if no client holds it any more.
+     *
+     * @param stub
+     * @param state
+     * @param metrics
+     * @return
+     */
+    static CompletableFuture<Void> abort(DgraphStub stub, TransactionState state, MetricsListener metrics) {
         TxnContext context = TxnContext.newBuilder()
                 .setStartTs(state.getStartTs())
                 .addAllKeys(state.getKeys())
@@ -232,10 +597,13 @@ public abstract class AbstractClient {
                 .build();
 
         StreamObserverBridge<TxnContext> bridge = new StreamObserverBridge<>();
+        long sent = System.nanoTime();
         stub.commitOrAbort(context, bridge);
         return bridge.getDelegate()
                 .handle((TxnContext ctx, Throwable throwable) -> {
-                    if (throwable != null) {
+                    if (throwable == null) {
+                        metrics.onCall(OperationType.ABORT, System.nanoTime() - sent, context.getSerializedSize(), ctx == null ? 0 : ctx.getSerializedSize());
+                    } else {
                         if (throwable instanceof StatusRuntimeException) {
                             StatusRuntimeException statusRuntimeEx = (StatusRuntimeException) throwable;
 
@@ -257,7 +625,7 @@ public abstract class AbstractClient {
      * @return
      */
     public CompletableFuture<Map<String, String>> del(String nQuads) {
-        return mutate(newMutation(Mutation.Builder::setDelNquads, nQuads));
+        return mutate(newPayloadMutation(Mutation.Builder::setDelNquads, nQuads));
     }
 
     /**
@@ -284,7 +652,7 @@ public abstract class AbstractClient {
      * @return
      */
     public CompletableFuture<Map<String, String>> set(String nQuads) {
-        return mutate(newMutation(Mutation.Builder::setSetNquads, nQuads));
+        return mutate(newPayloadMutation(Mutation.Builder::setSetNquads, nQuads));
     }
 
     /**
@@ -305,6 +673,24 @@ public abstract class AbstractClient {
         return set(nQuadsSupplier.get());
     }
 
+    /**
+     * Executes the set operation for the supplied typed nQuads.
+     * @param nQuads
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> set(TypedNQuads nQuads) {
+        return set(nQuads.toArray());
+    }
+
+    /**
+     * Executes the delete operation for the supplied typed nQuads.
+     * @param nQuads
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> del(TypedNQuads nQuads) {
+        return del(nQuads.toArray());
+    }
+
     /**
      * Executes the delete operation for the supplied nQuads. Example usage:
      * <pre>
@@ -331,4 +717,171 @@ public abstract class AbstractClient {
     public CompletableFuture<Map<String, String>> set(NQuad... nQuads) {
         return mutate(newMutation(Mutation.Builder::addSet, nQuads));
     }
+
+    /**
+     * Executes the set operation for the supplied object serialised to JSON. Example usage:
+     * <pre>
+     *     client.setObject(new Person("starmaker@mail.com"));
+     * </pre>
+     * The object is serialised with Gson, so all Gson annotations are supported.
+     * @param object
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> setObject(Object object) {
+        return mutate(newPayloadMutation(Mutation.Builder::setSetJson, toJson(object)));
+    }
+
+    /**
+     * Executes the set operation for the supplied node written by its generated {@link NodeEncoder}.
+     * Null fields of the node delete all values of their predicates. Example usage:
+     * <pre>
+     *     client.setNode(new Person("starmaker@mail.com"));
+     * </pre>
+     * @param node - instance of class annotated with {@link DgraphNode}
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> setNode(Object node) {
+        return setNodes(singletonList(node));
+    }
+
+    /**
+     * Executes the set operation for the supplied nodes written by their generated {@link NodeEncoder}s
+     * in one mutation. Blank nodes are named in the order the nodes are written: n0, n1, ...
+     * @param nodes - instances of classes annotated with {@link DgraphNode}
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> setNodes(Iterable<?> nodes) {
+        NodeWriter writer = new NodeWriter();
+        for (Object node : nodes) {
+            writer.write(node);
+        }
+        Mutation mutation = newMutation(Mutation.Builder::addSet, writer.getSet().toArray(new NQuad[0]));
+        return mutate(mutation.toBuilder().addAllDel(writer.getDel()).build());
+    }
+
+    /**
+     * Executes the delete operation for the supplied object serialised to JSON.
+     * @param object
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> delObject(Object object) {
+        return mutate(newPayloadMutation(Mutation.Builder::setDeleteJson, toJson(object)));
+    }
+
+    /**
+     * Executes the set operation for the supplied objects serialised to JSON, splitting them into
+     * several mutations of about {@link #DEFAULT_JSON_CHUNK_BYTES} each.
+     * @param objects
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> setJson(Iterable<?> objects) {
+        return setJson(objects, DEFAULT_JSON_CHUNK_BYTES);
+    }
+
+    /**
+     * Executes the set operation for the supplied objects serialised to JSON. Once serialised objects
+     * reach the given number of bytes, they are sent as a separate mutation, so only one chunk is held
+     * in memory at a time. Note that:
+     * <ul>
+     *     <li>blank node references are resolved per mutation and do not span chunks</li>
+     *     <li>one-off operations commit every chunk separately, transactions keep all chunks within the transaction</li>
+     * </ul>
+     * @param objects
+     * @param chunkBytes
+     * @return uids assigned by all the mutations
+     */
+    public CompletableFuture<Map<String, String>> setJson(Iterable<?> objects, int chunkBytes) {
+        return mutateJson(Mutation.Builder::setSetJson, objects.iterator(), chunkBytes, new HashMap<>());
+    }
+
+    /**
+     * Executes the delete operation for the supplied objects serialised to JSON, splitting them into
+     * several mutations of about {@link #DEFAULT_JSON_CHUNK_BYTES} each.
+     * @param objects
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> delJson(Iterable<?> objects) {
+        return delJson(objects, DEFAULT_JSON_CHUNK_BYTES);
+    }
+
+    /**
+     * Executes the delete operation for the supplied objects serialised to JSON, see {@link #setJson(Iterable, int)}.
+     * @param objects
+     * @param chunkBytes
+     * @return
+     */
+    public CompletableFuture<Map<String, String>> delJson(Iterable<?> objects, int chunkBytes) {
+        return mutateJson(Mutation.Builder::setDeleteJson, objects.iterator(), chunkBytes, new HashMap<>());
+    }
+
+    private CompletableFuture<Map<String, String>> mutateJson(BiConsumer<Mutation.Builder, ByteString> setter,
+                                                              Iterator<?> objects, int chunkBytes, Map<String, String> uids) {
+        ByteString chunk;
+        try {
+            chunk = nextJsonChunk(objects, chunkBytes);
+        } catch (RuntimeException e) {
+            CompletableFuture<Map<String, String>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        if (chunk == null) {
+            return CompletableFuture.completedFuture(uids);
+        }
+        return mutate(newPayloadMutation(setter, chunk))
+                .thenCompose((Map<String, String> assigned) -> {
+                    uids.putAll(assigned);
+                    return mutateJson(setter, objects, chunkBytes, uids);
+                });
+    }
+
+    /**
+     * Serialises the supplied object straight into a byte string.
+     *
+     * @param object
+     * @return
+     */
+    static ByteString toJson(Object object) {
+        ByteString.Output output = ByteString.newOutput();
+        try (JsonWriter writer = PARSER.newJsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            writeJson(object, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteString();
+    }
+
+    /**
+     * Serialises objects from the supplied iterator into a JSON array until the given number of bytes is reached.
+     *
+     * @param objects
+     * @param chunkBytes
+     * @return the array or null if there are no more objects
+     */
+    static ByteString nextJsonChunk(Iterator<?> objects, int chunkBytes) {
+        if (!objects.hasNext()) {
+            return null;
+        }
+
+        ByteString.Output output = ByteString.newOutput();
+        try (JsonWriter writer = PARSER.newJsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            writer.beginArray();
+            while (objects.hasNext() && output.size() < chunkBytes) {
+                writeJson(objects.next(), writer);
+                writer.flush();
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteString();
+    }
+
+    private static void writeJson(Object object, JsonWriter writer) throws IOException {
+        if (object == null) {
+            writer.nullValue();
+        } else {
+            PARSER.toJson(object, object.getClass(), writer);
+        }
+    }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphGrpc;
+import io.dgraph.DgraphGrpc.DgraphStub;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * Pool of GRPC channels to the same DGraph endpoint. Every channel maintains its own HTTP/2 connection,
+ * so spreading the calls over several channels avoids hitting the max-concurrent-streams limit and
+ * the head-of-line blocking of a single connection. Example usage:
+ * <pre>
+ *     ChannelPool pool = ChannelPool.create(4, () -&gt; ManagedChannelBuilder.forAddress("localhost", 9080)
+ *                                                      .usePlaintext()
+ *                                                      .build());
+ *     DClined client = new DClined(pool);
+ * </pre>
+ *
+ * @author Michail Klimenkov
+ */
+public class ChannelPool {
+
+    /**
+     * Strategies of picking the channel for the next call.
+     */
+    public enum Balancing {
+        /**
+         * Channels are used in turns.
+         */
+        ROUND_ROBIN,
+        /**
+         * Channel with the least calls in flight is used, ties are resolved in turns.
+         */
+        LEAST_LOADED
+    }
+
+    private final Balancing balancing;
+    private final List<ManagedChannel> channels;
+    private final DgraphStub[] stubs;
+    private final AtomicIntegerArray inFlight;
+    private final AtomicInteger turn = new AtomicInteger();
+
+    public ChannelPool(ManagedChannel... channels) {
+        this(Balancing.LEAST_LOADED, Arrays.asList(channels));
+    }
+
+    public ChannelPool(Balancing balancing, List<ManagedChannel> channels) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("At least one channel is required");
+        }
+        this.balancing = balancing;
+        this.channels = Collections.unmodifiableList(new ArrayList<>(channels));
+        this.stubs = new DgraphStub[channels.size()];
+        this.inFlight = new AtomicIntegerArray(channels.size());
+
+        for (int i = 0; i < stubs.length; i++) {
+            Channel counted = ClientInterceptors.intercept(channels.get(i), new InFlightCounter(i));
+            stubs[i] = DgraphGrpc.newStub(counted);
+        }
+    }
+
+    /**
+     * Creates pool of the given size using the supplied factory to create the channels.
+     *
+     * @param size
+     * @param channelFactory
+     * @return
+     */
+    public static ChannelPool create(int size, Supplier<ManagedChannel> channelFactory) {
+        List<ManagedChannel> channels = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            channels.add(channelFactory.get());
+        }
+        return new ChannelPool(Balancing.LEAST_LOADED, channels);
+    }
+
+    /**
+     * Picks the stub to be used for the next call according to the balancing strategy.
+     *
+     * @return
+     */
+    DgraphStub next() {
+        int size = stubs.length;
+        if (size == 1) {
+            return stubs[0];
+        }
+
+        int start = Math.floorMod(turn.getAndIncrement(), size);
+        if (balancing == Balancing.ROUND_ROBIN) {
+            return stubs[start];
+        }
+
+        int best = start;
+        int bestLoad = inFlight.get(start);
+        for (int i = 1; i < size && bestLoad > 0; i++) {
+            int candidate = (start + i) % size;
+            int load = inFlight.get(candidate);
+            if (load < bestLoad) {
+                best = candidate;
+                bestLoad = load;
+            }
+        }
+        return stubs[best];
+    }
+
+    /**
+     * @param index
+     * @return stub of the channel with the given index
+     */
+    DgraphStub stub(int index) {
+        return stubs[index];
+    }
+
+    public int size() {
+        return stubs.length;
+    }
+
+    public List<ManagedChannel> getChannels() {
+        return channels;
+    }
+
+    /**
+     * @param index
+     * @return number of calls currently in flight on the channel with the given index
+     */
+    public int getInFlight(int index) {
+        return inFlight.get(index);
+    }
+
+    /**
+     * Shuts down all the channels of this pool.
+     */
+    public void shutdown() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+    }
+
+    private class InFlightCounter implements ClientInterceptor {
+        private final int index;
+
+        InFlightCounter(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+            return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers) {
+                    inFlight.incrementAndGet(index);
+                    try {
+                        super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                            @Override
+                            public void onClose(Status status, Metadata trailers) {
+                                inFlight.decrementAndGet(index);
+                                super.onClose(status, trailers);
+                            }
+                        }, headers);
+                    } catch (RuntimeException e) {
+                        inFlight.decrementAndGet(index);
+                        throw e;
+                    }
+                }
+            };
+        }
+    }
+}
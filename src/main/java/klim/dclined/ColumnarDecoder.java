@@ -0,0 +1,686 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes the JSON of a response into the columns of a {@link ResultTable}. The JSON is scanned byte by byte
+ * straight from the response buffer: numbers and uids are parsed in place and strings are looked up in
+ * the dictionary of their column, so decoding allocates per column and per distinct string, not per row.
+ *
+ * @author Michail Klimenkov
+ */
+class ColumnarDecoder {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ByteBuffer json;
+    private final int limit;
+    private final byte[] block;
+    private final byte[][] names;
+    private final Column[] columns;
+    private byte[] scratch = new byte[64];
+    private int scratchLength;
+    private int pos;
+    private int rowCount;
+
+    private ColumnarDecoder(ByteString json, ResultColumns columns) {
+        this.json = json.asReadOnlyByteBuffer();
+        this.pos = this.json.position();
+        this.limit = this.json.limit();
+        this.block = columns.getBlock() == null ? null : columns.getBlock().getBytes(StandardCharsets.UTF_8);
+        this.names = new byte[columns.getColumns().size()][];
+        this.columns = new Column[names.length];
+        int i = 0;
+        for (Map.Entry<String, ResultColumns.Type> column : columns.getColumns().entrySet()) {
+            names[i] = column.getKey().getBytes(StandardCharsets.UTF_8);
+            this.columns[i++] = new Column(column.getKey(), column.getValue());
+        }
+    }
+
+    static ResultTable decode(ByteString json, ResultColumns columns) {
+        return new ColumnarDecoder(json, columns).decode();
+    }
+
+    private ResultTable decode() {
+        skipWhitespace();
+        if (pos < limit) {
+            expect('{');
+            skipWhitespace();
+            while (peek() != '}') {
+                readString();
+                boolean selected = block == null || scratchEquals(block);
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (selected && peek() == '[') {
+                    readRows();
+                    break;
+                }
+                skipValue();
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                    skipWhitespace();
+                }
+            }
+        }
+
+        Map<String, long[]> longs = new HashMap<>();
+        Map<String, double[]> doubles = new HashMap<>();
+        Map<String, int[]> codes = new HashMap<>();
+        Map<String, String[]> dictionaries = new HashMap<>();
+        Map<String, BitSet> present = new HashMap<>();
+        for (Column column : columns) {
+            present.put(column.name, column.present);
+            switch (column.type) {
+                case UID:
+                case LONG:
+                    longs.put(column.name, Arrays.copyOf(column.longs, rowCount));
+                    break;
+                case DOUBLE:
+                    doubles.put(column.name, Arrays.copyOf(column.doubles, rowCount));
+                    break;
+                default:
+                    codes.put(column.name, Arrays.copyOf(column.codes, rowCount));
+                    dictionaries.put(column.name, column.dictionary());
+            }
+        }
+        return new ResultTable(rowCount, longs, doubles, codes, dictionaries, present);
+    }
+
+    private void readRows() {
+        expect('[');
+        skipWhitespace();
+        while (peek() != ']') {
+            if (peek() == '{') {
+                readRow();
+            } else {
+                skipValue();
+            }
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+                skipWhitespace();
+            }
+        }
+        pos++;
+    }
+
+    private void readRow() {
+        int row = rowCount++;
+        for (Column column : columns) {
+            column.grow(rowCount);
+        }
+        expect('{');
+        skipWhitespace();
+        while (peek() != '}') {
+            readString();
+            Column column = null;
+            for (int i = 0; i < names.length; i++) {
+                if (scratchEquals(names[i])) {
+                    column = columns[i];
+                    break;
+                }
+            }
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (column == null || column.present.get(row)) {
+                skipValue();
+            } else {
+                readValue(column, row);
+            }
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+                skipWhitespace();
+            }
+        }
+        pos++;
+    }
+
+    private void readValue(Column column, int row) {
+        byte b = peek();
+        if (b == '"') {
+            int start = pos + 1;
+            readString();
+            switch (column.type) {
+                case UID:
+                    column.setLong(row, parseUid());
+                    return;
+                case STRING:
+                    column.setCode(row, column.lookup(scratch, scratchLength));
+                    return;
+                default:
+                    // numbers sent as strings, anything else such as datetimes is left absent
+                    if (isNumberToken(start, pos - 1)) {
+                        setNumber(column, row, start, pos - 1);
+                    }
+                    return;
+            }
+        }
+        if (isNumber(b)) {
+            int start = pos;
+            while (pos < limit && isNumberPart(json.get(pos))) {
+                pos++;
+            }
+            if (column.type == ResultColumns.Type.STRING) {
+                copyToScratch(start, pos);
+                column.setCode(row, column.lookup(scratch, scratchLength));
+            } else if (isNumberToken(start, pos)) {
+                setNumber(column, row, start, pos);
+            }
+            return;
+        }
+        if (b == 't' || b == 'f') {
+            boolean value = b == 't';
+            pos += value ? 4 : 5;
+            switch (column.type) {
+                case DOUBLE:
+                    column.setDouble(row, value ? 1 : 0);
+                    return;
+                case STRING:
+                    scratchLength = 0;
+                    for (byte c : (value ? "true" : "false").getBytes(StandardCharsets.US_ASCII)) {
+                        appendScratch(c);
+                    }
+                    column.setCode(row, column.lookup(scratch, scratchLength));
+                    return;
+                default:
+                    column.setLong(row, value ? 1 : 0);
+                    return;
+            }
+        }
+        skipValue();
+    }
+
+    private void setNumber(Column column, int row, int start, int end) {
+        if (column.type == ResultColumns.Type.DOUBLE) {
+            column.setDouble(row, parseDouble(start, end));
+        } else {
+            column.setLong(row, parseLong(start, end));
+        }
+    }
+
+    private long parseUid() {
+        int i = 0;
+        if (scratchLength > 2 && scratch[0] == '0' && (scratch[1] == 'x' || scratch[1] == 'X')) {
+            long uid = 0;
+            for (i = 2; i < scratchLength; i++) {
+                uid = (uid << 4) | Character.digit(scratch[i], 16);
+            }
+            return uid;
+        }
+        long uid = 0;
+        for (; i < scratchLength; i++) {
+            uid = uid * 10 + (scratch[i] - '0');
+        }
+        return uid;
+    }
+
+    private long parseLong(int start, int end) {
+        boolean negative = json.get(start) == '-';
+        int i = negative ? start + 1 : start;
+        // accumulated negatively, so that all 19 digit values including Long.MIN_VALUE fit
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = json.get(i);
+            if (b < '0' || b > '9') {
+                // fractions and exponents
+                return (long) parseDouble(start, end);
+            }
+            int digit = b - '0';
+            if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + digit) {
+                return (long) parseDouble(start, end);
+            }
+            value = value * 10 - digit;
+        }
+        if (negative) {
+            return value;
+        }
+        return value == Long.MIN_VALUE ? (long) parseDouble(start, end) : -value;
+    }
+
+    /**
+     * Tells whether the bytes in the given range form a JSON number.
+     */
+    private boolean isNumberToken(int start, int end) {
+        int i = start;
+        if (i < end && json.get(i) == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < end && isDigit(json.get(i))) {
+            i++;
+        }
+        if (i == digits) {
+            return false;
+        }
+        if (i < end && json.get(i) == '.') {
+            int fraction = ++i;
+            while (i < end && isDigit(json.get(i))) {
+                i++;
+            }
+            if (i == fraction) {
+                return false;
+            }
+        }
+        if (i < end && (json.get(i) == 'e' || json.get(i) == 'E')) {
+            i++;
+            if (i < end && (json.get(i) == '-' || json.get(i) == '+')) {
+                i++;
+            }
+            int exponent = i;
+            while (i < end && isDigit(json.get(i))) {
+                i++;
+            }
+            if (i == exponent) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    private double parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = json.get(i) == '-';
+        if (negative || json.get(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte b = json.get(i);
+            if (b == '.') {
+                fraction = true;
+            } else if (b >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else {
+                    exact = false;
+                    if (!fraction) {
+                        exponent++;
+                    }
+                }
+            } else {
+                break;
+            }
+        }
+        if (i < end) {
+            // exponent part
+            i++;
+            boolean negativeExponent = json.get(i) == '-';
+            if (negativeExponent || json.get(i) == '+') {
+                i++;
+            }
+            int explicit = 0;
+            for (; i < end; i++) {
+                explicit = explicit * 10 + (json.get(i) - '0');
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+
+        if (exact && digits <= 15 && exponent >= -22 && exponent <= 22) {
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        copyToScratch(start, end);
+        return Double.parseDouble(new String(scratch, 0, scratchLength, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Reads string at the current position into the scratch buffer, unescaped.
+     */
+    private void readString() {
+        expect('"');
+        scratchLength = 0;
+        while (true) {
+            byte b = next();
+            if (b == '"') {
+                return;
+            }
+            if (b != '\\') {
+                appendScratch(b);
+                continue;
+            }
+            byte escaped = next();
+            switch (escaped) {
+                case 'b':
+                    appendScratch((byte) '\b');
+                    break;
+                case 'f':
+                    appendScratch((byte) '\f');
+                    break;
+                case 'n':
+                    appendScratch((byte) '\n');
+                    break;
+                case 'r':
+                    appendScratch((byte) '\r');
+                    break;
+                case 't':
+                    appendScratch((byte) '\t');
+                    break;
+                case 'u':
+                    appendCodePoint(readCodePoint());
+                    break;
+                default:
+                    appendScratch(escaped);
+            }
+        }
+    }
+
+    private int readCodePoint() {
+        char c = readHexChar();
+        if (Character.isHighSurrogate(c) && pos + 1 < limit && json.get(pos) == '\\' && json.get(pos + 1) == 'u') {
+            pos += 2;
+            char low = readHexChar();
+            if (Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(c, low);
+            }
+            appendCodePoint(c);
+            return low;
+        }
+        return c;
+    }
+
+    private char readHexChar() {
+        int c = 0;
+        for (int i = 0; i < 4; i++) {
+            c = (c << 4) | Character.digit(next(), 16);
+        }
+        return (char) c;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            appendScratch((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            appendScratch((byte) (0xC0 | (codePoint >> 6)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (codePoint < 0x10000) {
+            appendScratch((byte) (0xE0 | (codePoint >> 12)));
+            appendScratch((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        } else {
+            appendScratch((byte) (0xF0 | (codePoint >> 18)));
+            appendScratch((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            appendScratch((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        }
+    }
+
+    private void skipValue() {
+        int depth = 0;
+        do {
+            byte b = peek();
+            if (b == '"') {
+                pos++;
+                while (true) {
+                    byte c = next();
+                    if (c == '\\') {
+                        pos++;
+                    } else if (c == '"') {
+                        break;
+                    }
+                }
+                continue;
+            }
+            pos++;
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            } else if (depth == 0 && b != ',') {
+                // scalar: number, true, false or null
+                while (pos < limit && isScalarPart(json.get(pos))) {
+                    pos++;
+                }
+            }
+        } while (depth > 0);
+    }
+
+    private void copyToScratch(int start, int end) {
+        scratchLength = 0;
+        for (int i = start; i < end; i++) {
+            appendScratch(json.get(i));
+        }
+    }
+
+    private void appendScratch(byte b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratchLength * 2);
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private boolean scratchEquals(byte[] name) {
+        if (name.length != scratchLength) {
+            return false;
+        }
+        for (int i = 0; i < scratchLength; i++) {
+            if (scratch[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte b = json.get(pos);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private byte peek() {
+        if (pos >= limit) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return json.get(pos);
+    }
+
+    private byte next() {
+        byte b = peek();
+        pos++;
+        return b;
+    }
+
+    private void expect(char c) {
+        byte b = next();
+        if (b != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' but found '" + (char) b + "' at " + (pos - 1));
+        }
+    }
+
+    private static boolean isNumber(byte b) {
+        return (b >= '0' && b <= '9') || b == '-';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isNumberPart(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    private static boolean isScalarPart(byte b) {
+        return b != ',' && b != '}' && b != ']' && b != ' ' && b != '\n' && b != '\r' && b != '\t';
+    }
+
+    private static class Column {
+        private final String name;
+        private final ResultColumns.Type type;
+        private final BitSet present = new BitSet();
+        private long[] longs;
+        private double[] doubles;
+        private int[] codes;
+        // dictionary of string columns: bytes of the entries, their offsets and an open addressing index
+        private byte[] data;
+        private int dataLength;
+        private int[] offsets;
+        private int entries;
+        private int[] index;
+
+        Column(String name, ResultColumns.Type type) {
+            this.name = name;
+            this.type = type;
+            switch (type) {
+                case UID:
+                case LONG:
+                    longs = new long[16];
+                    break;
+                case DOUBLE:
+                    doubles = new double[16];
+                    Arrays.fill(doubles, Double.NaN);
+                    break;
+                default:
+                    codes = new int[16];
+                    Arrays.fill(codes, -1);
+                    data = new byte[256];
+                    offsets = new int[17];
+                    index = new int[32];
+            }
+        }
+
+        void grow(int rows) {
+            if (longs != null && longs.length < rows) {
+                longs = Arrays.copyOf(longs, longs.length * 2);
+            }
+            if (doubles != null && doubles.length < rows) {
+                int from = doubles.length;
+                doubles = Arrays.copyOf(doubles, from * 2);
+                Arrays.fill(doubles, from, doubles.length, Double.NaN);
+            }
+            if (codes != null && codes.length < rows) {
+                int from = codes.length;
+                codes = Arrays.copyOf(codes, from * 2);
+                Arrays.fill(codes, from, codes.length, -1);
+            }
+        }
+
+        void setLong(int row, long value) {
+            longs[row] = value;
+            present.set(row);
+        }
+
+        void setDouble(int row, double value) {
+            doubles[row] = value;
+            present.set(row);
+        }
+
+        void setCode(int row, int code) {
+            codes[row] = code;
+            present.set(row);
+        }
+
+        int lookup(byte[] bytes, int length) {
+            int hash = 0x811c9dc5;
+            for (int i = 0; i < length; i++) {
+                hash = (hash ^ bytes[i]) * 0x01000193;
+            }
+            int mask = index.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int entry = index[slot] - 1;
+                if (entry < 0) {
+                    return add(bytes, length, slot);
+                }
+                if (matches(entry, bytes, length)) {
+                    return entry;
+                }
+            }
+        }
+
+        private boolean matches(int entry, byte[] bytes, int length) {
+            int start = offsets[entry];
+            if (offsets[entry + 1] - start != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (data[start + i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int add(byte[] bytes, int length, int slot) {
+            if (dataLength + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+            }
+            System.arraycopy(bytes, 0, data, dataLength, length);
+            dataLength += length;
+            if (entries + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            int entry = entries++;
+            offsets[entries] = dataLength;
+            index[slot] = entry + 1;
+            if (entries * 2 > index.length) {
+                rehash();
+            }
+            return entry;
+        }
+
+        private void rehash() {
+            index = new int[index.length * 2];
+            int mask = index.length - 1;
+            for (int entry = 0; entry < entries; entry++) {
+                int hash = 0x811c9dc5;
+                for (int i = offsets[entry]; i < offsets[entry + 1]; i++) {
+                    hash = (hash ^ data[i]) * 0x01000193;
+                }
+                int slot = hash & mask;
+                while (index[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                index[slot] = entry + 1;
+            }
+        }
+
+        String[] dictionary() {
+            String[] dictionary = new String[entries];
+            for (int entry = 0; entry < entries; entry++) {
+                dictionary[entry] = new String(data, offsets[entry], offsets[entry + 1] - offsets[entry], StandardCharsets.UTF_8);
+            }
+            return dictionary;
+        }
+    }
+}
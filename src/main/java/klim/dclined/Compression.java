@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphGrpc.DgraphStub;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses requests whose payload exceeds the size threshold, so that small latency sensitive calls do not pay
+ * for the compression. Example usage:
+ * <pre>
+ *     client.setCompression(Compression.gzip(16 * 1024));
+ * </pre>
+ * Codecs other than gzip must be registered with {@link #register(Codec)}, or in the registry the channel is built with,
+ * and be supported by the server. Compression of responses is decided by the server among the encodings advertised by the channel, see
+ * {@link #decompressors()}. Wire and uncompressed byte counts of all the calls of the client are kept
+ * to show the savings.
+ *
+ * @author Michail Klimenkov
+ */
+public class Compression {
+
+    private static volatile DecompressorRegistry decompressors = DecompressorRegistry.getDefaultInstance();
+
+    private final String codec;
+    private final int thresholdBytes;
+    private final AtomicLong compressedCalls = new AtomicLong();
+    private final AtomicLong outboundWireBytes = new AtomicLong();
+    private final AtomicLong outboundUncompressedBytes = new AtomicLong();
+    private final AtomicLong inboundWireBytes = new AtomicLong();
+    private final AtomicLong inboundUncompressedBytes = new AtomicLong();
+    private final ClientInterceptor counter = new ByteCounter();
+
+    /**
+     * @param codec          - name of a registered codec, e.g. "gzip"
+     * @param thresholdBytes - requests with serialised payload of at least this size are compressed
+     */
+    public Compression(String codec, int thresholdBytes) {
+        this(codec, thresholdBytes, CompressorRegistry.getDefaultInstance());
+    }
+
+    /**
+     * @param codec          - name of a codec of the registry
+     * @param thresholdBytes - requests with serialised payload of at least this size are compressed
+     * @param compressors    - registry the channel is built with by {@code ManagedChannelBuilder.compressorRegistry(...)}
+     */
+    public Compression(String codec, int thresholdBytes, CompressorRegistry compressors) {
+        if (compressors.lookupCompressor(codec) == null) {
+            throw new IllegalArgumentException("Unknown codec " + codec);
+        }
+        this.codec = codec;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    public static Compression gzip(int thresholdBytes) {
+        return new Compression(new Codec.Gzip().getMessageEncoding(), thresholdBytes);
+    }
+
+    /**
+     * Registers the codec for compressing requests and makes it available for decompressing responses
+     * of the channels built with {@link #decompressors()}. The registration is global: it goes to the default
+     * registries of gRPC and stays for the lifetime of the process.
+     *
+     * @param codec
+     */
+    public static synchronized void register(Codec codec) {
+        CompressorRegistry.getDefaultInstance().register(codec);
+        decompressors = decompressors.with(codec, true);
+    }
+
+    /**
+     * Registry to be passed to {@code ManagedChannelBuilder.decompressorRegistry(...)} in order to accept responses
+     * compressed with any of the registered codecs.
+     *
+     * @return
+     */
+    public static DecompressorRegistry decompressors() {
+        return decompressors;
+    }
+
+    DgraphStub apply(DgraphStub stub, int payloadBytes) {
+        DgraphStub counted = stub.withInterceptors(counter);
+        if (payloadBytes < thresholdBytes) {
+            return counted;
+        }
+        compressedCalls.incrementAndGet();
+        return counted.withCompression(codec);
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public int getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    /**
+     * @return number of calls sent compressed
+     */
+    public long getCompressedCalls() {
+        return compressedCalls.get();
+    }
+
+    /**
+     * @return bytes of requests sent over the network
+     */
+    public long getOutboundWireBytes() {
+        return outboundWireBytes.get();
+    }
+
+    /**
+     * @return bytes of requests before compression
+     */
+    public long getOutboundUncompressedBytes() {
+        return outboundUncompressedBytes.get();
+    }
+
+    /**
+     * @return bytes of responses received over the network
+     */
+    public long getInboundWireBytes() {
+        return inboundWireBytes.get();
+    }
+
+    /**
+     * @return bytes of responses after decompression
+     */
+    public long getInboundUncompressedBytes() {
+        return inboundUncompressedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Compression{codec=%s, thresholdBytes=%d, compressedCalls=%d, outbound=%d/%d, inbound=%d/%d}",
+                codec, thresholdBytes, getCompressedCalls(), getOutboundWireBytes(), getOutboundUncompressedBytes(),
+                getInboundWireBytes(), getInboundUncompressedBytes());
+    }
+
+    private class ByteCounter extends ClientStreamTracer.Factory implements ClientInterceptor {
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+            return next.newCall(method, callOptions.withStreamTracerFactory(this));
+        }
+
+        @Override
+        public ClientStreamTracer newClientStreamTracer(CallOptions callOptions, Metadata headers) {
+            return new ClientStreamTracer() {
+                @Override
+                public void outboundWireSize(long bytes) {
+                    outboundWireBytes.addAndGet(bytes);
+                }
+
+                @Override
+                public void outboundUncompressedSize(long bytes) {
+                    outboundUncompressedBytes.addAndGet(bytes);
+                }
+
+                @Override
+                public void inboundWireSize(long bytes) {
+                    inboundWireBytes.addAndGet(bytes);
+                }
+
+                @Override
+                public void inboundUncompressedSize(long bytes) {
+                    inboundUncompressedBytes.addAndGet(bytes);
+                }
+            };
+        }
+    }
+}
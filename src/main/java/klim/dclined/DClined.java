@@ -15,8 +15,8 @@
  */
 package klim.dclined;
 
+import com.google.gson.reflect.TypeToken;
 import com.google.protobuf.ByteString;
-import io.dgraph.DgraphGrpc;
 import io.dgraph.DgraphGrpc.DgraphStub;
 import io.dgraph.DgraphProto;
 import io.dgraph.DgraphProto.Mutation;
@@ -26,8 +26,15 @@ import io.dgraph.DgraphProto.TxnContext;
 import io.grpc.ManagedChannel;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static java.util.Collections.emptyMap;
 
 /**
  * This is the central object that should be used for interacting with DGraph.
@@ -37,28 +44,338 @@ import java.util.function.BiConsumer;
  * @author Michail Klimenkov
  */
 public class DClined extends AbstractClient implements Closeable {
-    private final ManagedChannel channel;
-    private final DgraphStub stub;
+    private final ChannelPool queryPool;
+    private final ChannelPool mutationPool;
+    private volatile MetricsListener metrics = MetricsListener.NOOP;
+    private volatile SlowOperationLog slowOperationLog;
+    private volatile Compression compression;
+    private final LinReadWatermarks linReadWatermarks = new LinReadWatermarks();
+    private volatile int maxResponseBytes;
+    private volatile boolean queryMemoization;
+    private final PriorityDispatcher dispatcher = new PriorityDispatcher();
+    private final SchemaManager schemaManager = new SchemaManager(this);
+    private final TransactionTracker transactionTracker = new TransactionTracker(this);
+    private final Watcher watcher = new Watcher(this);
+    private volatile boolean ready;
 
     public DClined(ManagedChannel channel) {
-        this.channel = channel;
-        this.stub = DgraphGrpc.newStub(channel);
+        this(new ChannelPool(channel));
+    }
+
+    /**
+     * Creates client spreading all the operations over the channels of the supplied pool.
+     *
+     * @param pool
+     */
+    public DClined(ChannelPool pool) {
+        this(pool, pool);
+    }
+
+    /**
+     * Creates client using separate channel pools so that bulk writes do not delay latency sensitive reads.
+     * One-off queries and all transactions use the query pool, one-off mutations and schema operations
+     * use the mutation pool.
+     *
+     * @param queryPool
+     * @param mutationPool
+     */
+    public DClined(ChannelPool queryPool, ChannelPool mutationPool) {
+        this.queryPool = queryPool;
+        this.mutationPool = mutationPool;
     }
 
     /**
      * Creates new transactions. Modifications performed on one transaction are not visible to the other
-     * transactions until the given transaction is committed.
+     * transactions until the given transaction is committed. All operations of the transaction
+     * are sent over the same channel.
      *
      * @return
      */
     public Transaction newTransaction() {
-        return new Transaction(stub);
+        return newTransaction(Priority.DEFAULT);
+    }
+
+    /**
+     * Creates new transaction whose operations are dispatched with the given priority, see {@link #setMaxInFlight}.
+     *
+     * @param priority
+     * @return
+     */
+    public Transaction newTransaction(Priority priority) {
+        return new Transaction(this, queryPool.next(), priority);
+    }
+
+    /**
+     * Retrieves view of this client whose one-off operations, snapshots and transactions are dispatched with
+     * the given priority. Example usage:
+     * <pre>
+     *     client.setMaxInFlight(64);
+     *     AbstractClient bulk = client.withPriority(Priority.BULK);
+     *     bulk.set(nQuads);
+     * </pre>
+     *
+     * @param priority
+     * @return
+     */
+    public AbstractClient withPriority(Priority priority) {
+        return priority == Priority.DEFAULT ? this : new PrioritizedClient(this, priority);
+    }
+
+    /**
+     * Polls the supplied query and notifies the listener with the decoded result whenever it changes, including
+     * the first result. Watches of the same query share one poll; while the result does not change, the poll
+     * gradually slows down to up to 8 times the interval. Example usage:
+     * <pre>
+     *     Watch watch = client.watch(query, 1, TimeUnit.SECONDS, TypeToken.get(Dashboard.class), dashboard::update);
+     *     ...
+     *     watch.close();
+     * </pre>
+     *
+     * @param query
+     * @param interval - interval of the poll while the result changes
+     * @param unit
+     * @param type     - TypeToken with the generic type of the expected result
+     * @param listener - invoked on GRPC threads
+     * @param <T>
+     * @return subscription to close once the changes are no longer needed
+     */
+    public <T> Watch watch(String query, long interval, TimeUnit unit, TypeToken<T> type, Consumer<T> listener) {
+        return watch(query, emptyMap(), interval, unit, type, listener);
+    }
+
+    /**
+     * Polls the supplied query with the given variables and notifies the listener whenever its result changes,
+     * see {@link #watch(String, long, TimeUnit, TypeToken, Consumer)}.
+     */
+    public <T> Watch watch(String query, Map<String, String> variables, long interval, TimeUnit unit,
+                           TypeToken<T> type, Consumer<T> listener) {
+        return watcher.watch(query, variables, interval, unit, type, listener);
+    }
+
+    /**
+     * @return number of distinct watched queries being polled
+     */
+    public int getWatchedQueryCount() {
+        return watcher.getPollCount();
     }
 
-    private CompletableFuture<Void> alter(Operation op) {
+    /**
+     * Starts purge of the nodes matched by the supplied query, see {@link Purge}.
+     *
+     * @param query - selection query paginated with $first and $after
+     * @return
+     */
+    public Purge purge(String query) {
+        return purge(query, emptyMap());
+    }
+
+    /**
+     * Starts purge of the nodes matched by the supplied query, see {@link Purge}.
+     *
+     * @param query     - selection query paginated with $first and $after
+     * @param variables - other variables of the query
+     * @return
+     */
+    public Purge purge(String query, Map<String, String> variables) {
+        return new Purge(this, query, variables);
+    }
+
+    CompletableFuture<Void> alter(Operation op) {
+        MetricsListener metrics = getMetrics();
         StreamObserverBridge<DgraphProto.Payload> observerBridge = new StreamObserverBridge<>();
-        getStub().alter(op, observerBridge);
-        return observerBridge.getDelegate().thenApply((p) -> null);
+        long sent = System.nanoTime();
+        getStub(OperationType.ALTER, op.getSerializedSize()).alter(op, observerBridge);
+        return observerBridge.getDelegate().thenApply((p) -> {
+            metrics.onCall(OperationType.ALTER, System.nanoTime() - sent, op.getSerializedSize(), p == null ? 0 : p.getSerializedSize());
+            return null;
+        });
+    }
+
+    /**
+     * Connects all the channels and checks the server version over each of them.
+     *
+     * @return
+     */
+    public CompletableFuture<Void> warmUp() {
+        return warmUp(new WarmUp());
+    }
+
+    /**
+     * Prepares this client to serve requests at full speed: connects all the channels, checks the server
+     * version over each of them, builds JSON adapters of the registered types and repeats the representative
+     * encodings and queries. The client is reported as ready once the returned future completes successfully.
+     *
+     * @param warmUp
+     * @return
+     */
+    public CompletableFuture<Void> warmUp(WarmUp warmUp) {
+        long started = System.nanoTime();
+        List<CompletableFuture<?>> checks = new ArrayList<>();
+        for (ChannelPool pool : queryPool == mutationPool ? new ChannelPool[]{queryPool} : new ChannelPool[]{queryPool, mutationPool}) {
+            for (int i = 0; i < pool.size(); i++) {
+                pool.getChannels().get(i).getState(true);
+                StreamObserverBridge<DgraphProto.Version> bridge = new StreamObserverBridge<>();
+                pool.stub(i).checkVersion(DgraphProto.Check.getDefaultInstance(), bridge);
+                checks.add(bridge.getDelegate());
+            }
+        }
+
+        CompletableFuture<Void> warm = CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> {
+                    for (TypeToken<?> type : warmUp.getTypes()) {
+                        PARSER.getAdapter(type);
+                    }
+                    for (int i = 0; i < warmUp.getEncodingRepetitions(); i++) {
+                        for (Object object : warmUp.getObjects()) {
+                            newPayloadMutation(Mutation.Builder::setSetJson, toJson(object)).toByteArray();
+                        }
+                        for (String nQuads : warmUp.getNQuads()) {
+                            newPayloadMutation(Mutation.Builder::setSetNquads, nQuads).toByteArray();
+                        }
+                    }
+                });
+        for (int i = 0; i < warmUp.getQueryRepetitions() && !warmUp.getQueries().isEmpty(); i++) {
+            warm = warm.thenCompose((v) -> CompletableFuture.allOf(warmUp.getQueries().entrySet().stream()
+                    .map((e) -> query(e.getKey(), emptyMap(), e.getValue()))
+                    .toArray(CompletableFuture<?>[]::new)));
+        }
+
+        return warm.whenComplete((v, throwable) -> {
+            ready = throwable == null;
+            if (ready) {
+                LOG.info("Warmed up in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            } else {
+                LOG.warn("Warm up failed", throwable);
+            }
+        });
+    }
+
+    /**
+     * Tells whether the last warm up completed successfully, e.g. for readiness probes.
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Sets the time after which transactions without operations in flight that have been neither committed
+     * nor aborted are aborted automatically. Transactions that become unreachable are aborted regardless.
+     *
+     * @param timeout - 0 to disable
+     * @param unit
+     */
+    public void setTransactionIdleTimeout(long timeout, TimeUnit unit) {
+        transactionTracker.setIdleTimeout(timeout, unit);
+    }
+
+    /**
+     * @return number of transactions created by this client that have been neither committed nor aborted
+     */
+    public int getOpenTransactionCount() {
+        return transactionTracker.getOpenCount();
+    }
+
+    /**
+     * @param unit
+     * @return ages of the open transactions in ascending order
+     */
+    public long[] getOpenTransactionAges(TimeUnit unit) {
+        return transactionTracker.getAges(unit);
+    }
+
+    TransactionTracker getTransactionTracker() {
+        return transactionTracker;
+    }
+
+    /**
+     * Sets the listener to be notified about timings of all remote operations performed by this client
+     * and transactions created by it. See {@link InMemoryMetrics} for the built-in implementation.
+     *
+     * @param metrics
+     */
+    public void setMetricsListener(MetricsListener metrics) {
+        this.metrics = metrics == null ? MetricsListener.NOOP : metrics;
+    }
+
+    /**
+     * Sets the log capturing queries and mutations slower than its threshold, performed by this client
+     * and transactions created by it. Pass null to stop capturing.
+     *
+     * @param slowOperationLog
+     */
+    public void setSlowOperationLog(SlowOperationLog slowOperationLog) {
+        this.slowOperationLog = slowOperationLog;
+    }
+
+    /**
+     * Sets compression of large requests performed by this client and transactions created by it.
+     * Pass null to stop compressing.
+     *
+     * @param compression
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Retrieves compression settings together with the byte counts of the calls made since they were set.
+     *
+     * @return compression or null if requests are not compressed
+     */
+    @Override
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the default response size budget of queries performed by this client and transactions created by it.
+     * Queries with larger JSON responses fail with {@link ResponseTooLargeException}.
+     *
+     * @param maxResponseBytes - 0 for no limit
+     */
+    public void setMaxResponseBytes(int maxResponseBytes) {
+        if (maxResponseBytes < 0) {
+            throw new IllegalArgumentException("Response size budget must not be negative: " + maxResponseBytes);
+        }
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    @Override
+    public int getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+
+    /**
+     * Limits the number of queries and mutations of this client and its transactions in flight at once.
+     * Operations beyond the limit are queued and dispatched in proportion to the weights of their priority
+     * classes, so that interactive operations are not stuck behind bulk ones. The time spent in the queue is
+     * reported to {@link MetricsListener#onQueue}.
+     *
+     * @param maxInFlight - 0 for no limit
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        dispatcher.setMaxInFlight(maxInFlight);
+    }
+
+    public int getMaxInFlight() {
+        return dispatcher.getMaxInFlight();
+    }
+
+    /**
+     * Enables or disables memoization of query responses within transactions created afterwards, disabled by default.
+     * A memoized response is dropped once the transaction modifies any predicate named in the query, or any
+     * predicate at all if the query uses expand() or the transaction deletes all the predicates of a node.
+     *
+     * @param queryMemoization
+     */
+    public void setQueryMemoization(boolean queryMemoization) {
+        this.queryMemoization = queryMemoization;
+    }
+
+    boolean isQueryMemoization() {
+        return queryMemoization;
     }
 
     /**
@@ -71,7 +388,7 @@ public class DClined extends AbstractClient implements Closeable {
                 .setDropAll(true)
                 .build();
 
-        return alter(operation);
+        return alter(operation).whenComplete((v, throwable) -> schemaManager.invalidate());
     }
 
     /**
@@ -91,7 +408,17 @@ public class DClined extends AbstractClient implements Closeable {
                 .setSchema(schema)
                 .build();
 
-        return alter(operation);
+        return alter(operation).whenComplete((v, throwable) -> schemaManager.invalidate());
+    }
+
+    /**
+     * Retrieves the schema manager of this client, that should be preferred over {@link #schema(String)}
+     * when the same schema is applied repeatedly.
+     *
+     * @return
+     */
+    public SchemaManager getSchemaManager() {
+        return schemaManager;
     }
 
     /**
@@ -105,7 +432,7 @@ public class DClined extends AbstractClient implements Closeable {
                 .setDropAttr(command)
                 .build();
 
-        return alter(operation);
+        return alter(operation).whenComplete((v, throwable) -> schemaManager.invalidate());
     }
 
 
@@ -115,8 +442,42 @@ public class DClined extends AbstractClient implements Closeable {
     }
 
     @Override
-    protected DgraphStub getStub() {
-        return stub;
+    protected DgraphStub getStub(OperationType type) {
+        return type == OperationType.QUERY ? queryPool.next() : mutationPool.next();
+    }
+
+    @Override
+    protected AbstractClient snapshot() {
+        return newSnapshot(Priority.DEFAULT);
+    }
+
+    Snapshot newSnapshot(Priority priority) {
+        return new Snapshot(this, queryPool.next(), priority);
+    }
+
+    @Override
+    protected MetricsListener getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    protected SlowOperationLog getSlowOperationLog() {
+        return slowOperationLog;
+    }
+
+    @Override
+    protected LinReadWatermarks getLinReadWatermarks() {
+        return linReadWatermarks;
+    }
+
+    @Override
+    protected Priority getPriority() {
+        return Priority.DEFAULT;
+    }
+
+    @Override
+    protected PriorityDispatcher getDispatcher() {
+        return dispatcher;
     }
 
     @Override
@@ -135,18 +496,24 @@ public class DClined extends AbstractClient implements Closeable {
     }
 
     @Override
-    protected Mutation newMutation(BiConsumer<Mutation.Builder, ByteString> stringNQuadSetter, String nQuads) {
+    protected Mutation newPayloadMutation(BiConsumer<Mutation.Builder, ByteString> payloadSetter, ByteString payload) {
         Mutation.Builder builder = Mutation.newBuilder();
-        stringNQuadSetter.accept(builder, ByteString.copyFromUtf8(nQuads));
+        payloadSetter.accept(builder, payload);
         return builder.setCommitNow(true).build();
     }
 
     /**
-     * Closes this client by shutting down the underlying GRPC channel.
+     * Closes this client by shutting down the underlying GRPC channels.
      */
     @Override
     public void close() {
         LOG.info("Shutting down...");
-        channel.shutdown();
+        ready = false;
+        transactionTracker.close();
+        watcher.close();
+        queryPool.shutdown();
+        if (mutationPool != queryPool) {
+            mutationPool.shutdown();
+        }
     }
 }
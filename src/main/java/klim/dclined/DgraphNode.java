@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks class whose instances are written as nodes. An encoder named {@code <Class>_NQuadEncoder} is generated
+ * for it at compile time, see {@link NodeEncoder}. All non-static, non-transient fields are written; fields must
+ * be non-private or have a non-private getter. The predicate of a field is the value of its {@link Predicate}
+ * or Gson's {@code @SerializedName} annotation, or the name of the field. The field whose predicate is
+ * {@code uid} holds the subject; nodes without uid are written as new blank nodes.
+ *
+ * @author Michail Klimenkov
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface DgraphNode {
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics listener that keeps histograms of all the reported timings and sizes in memory,
+ * separately for each operation type. Example usage:
+ * <pre>
+ *     InMemoryMetrics metrics = new InMemoryMetrics();
+ *     client.setMetricsListener(metrics);
+ *     ...
+ *     long p99 = metrics.getRoundTrip(OperationType.QUERY).getValueAtPercentile(99);
+ * </pre>
+ *
+ * @author Michail Klimenkov
+ */
+public class InMemoryMetrics implements MetricsListener {
+
+    private static final int TYPES = OperationType.values().length;
+    private static final int PRIORITIES = Priority.values().length;
+
+    private final Histogram[] roundTrip = histograms();
+    private final Histogram[] serverParsing = histograms();
+    private final Histogram[] serverProcessing = histograms();
+    private final Histogram[] serverEncoding = histograms();
+    private final Histogram[] decode = histograms();
+    private final Histogram[] requestBytes = histograms();
+    private final Histogram[] responseBytes = histograms();
+    private final AtomicLongArray aborts = new AtomicLongArray(TYPES);
+    private final AtomicLongArray retries = new AtomicLongArray(TYPES);
+    private final Histogram[] queueTime = new Histogram[PRIORITIES];
+
+    {
+        for (int i = 0; i < PRIORITIES; i++) {
+            queueTime[i] = new Histogram();
+        }
+    }
+
+    private static Histogram[] histograms() {
+        Histogram[] histograms = new Histogram[TYPES];
+        for (int i = 0; i < TYPES; i++) {
+            histograms[i] = new Histogram();
+        }
+        return histograms;
+    }
+
+    @Override
+    public void onCall(OperationType type, long roundTripNanos, long requestBytes, long responseBytes) {
+        int i = type.ordinal();
+        this.roundTrip[i].record(roundTripNanos);
+        this.requestBytes[i].record(requestBytes);
+        this.responseBytes[i].record(responseBytes);
+    }
+
+    @Override
+    public void onServerLatency(OperationType type, long parsingNanos, long processingNanos, long encodingNanos) {
+        int i = type.ordinal();
+        serverParsing[i].record(parsingNanos);
+        serverProcessing[i].record(processingNanos);
+        serverEncoding[i].record(encodingNanos);
+    }
+
+    @Override
+    public void onDecode(OperationType type, long decodeNanos) {
+        decode[type.ordinal()].record(decodeNanos);
+    }
+
+    @Override
+    public void onAbort(OperationType type) {
+        aborts.incrementAndGet(type.ordinal());
+    }
+
+    @Override
+    public void onRetry(OperationType type) {
+        retries.incrementAndGet(type.ordinal());
+    }
+
+    @Override
+    public void onQueue(OperationType type, Priority priority, long queueNanos) {
+        queueTime[priority.ordinal()].record(queueNanos);
+    }
+
+    /**
+     * Client observed round trip time in nanoseconds.
+     */
+    public Histogram getRoundTrip(OperationType type) {
+        return roundTrip[type.ordinal()];
+    }
+
+    /**
+     * Server reported parsing time in nanoseconds.
+     */
+    public Histogram getServerParsing(OperationType type) {
+        return serverParsing[type.ordinal()];
+    }
+
+    /**
+     * Server reported processing time in nanoseconds.
+     */
+    public Histogram getServerProcessing(OperationType type) {
+        return serverProcessing[type.ordinal()];
+    }
+
+    /**
+     * Server reported encoding time in nanoseconds.
+     */
+    public Histogram getServerEncoding(OperationType type) {
+        return serverEncoding[type.ordinal()];
+    }
+
+    /**
+     * Client side response deserialisation time in nanoseconds.
+     */
+    public Histogram getDecode(OperationType type) {
+        return decode[type.ordinal()];
+    }
+
+    public Histogram getRequestBytes(OperationType type) {
+        return requestBytes[type.ordinal()];
+    }
+
+    public Histogram getResponseBytes(OperationType type) {
+        return responseBytes[type.ordinal()];
+    }
+
+    public long getAborts(OperationType type) {
+        return aborts.get(type.ordinal());
+    }
+
+    public long getRetries(OperationType type) {
+        return retries.get(type.ordinal());
+    }
+
+    /**
+     * Time operations of the given priority waited for an in-flight slot in nanoseconds.
+     */
+    public Histogram getQueueTime(Priority priority) {
+        return queueTime[priority.ordinal()];
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < TYPES; i++) {
+            roundTrip[i].reset();
+            serverParsing[i].reset();
+            serverProcessing[i].reset();
+            serverEncoding[i].reset();
+            decode[i].reset();
+            requestBytes[i].reset();
+            responseBytes[i].reset();
+            aborts.set(i, 0);
+            retries.set(i, 0);
+        }
+        for (Histogram histogram : queueTime) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphProto.LinRead;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Highest applied index of every group seen in the responses of a client. Attached to queries with client side
+ * sequencing, it makes any alpha wait until it has caught up with the writes the client has already observed.
+ * Updates are lock-free; responses that do not advance any watermark do not allocate.
+ *
+ * @author Michail Klimenkov
+ */
+class LinReadWatermarks {
+
+    private final AtomicReference<LinRead> current = new AtomicReference<>(LinRead.getDefaultInstance());
+
+    LinRead get() {
+        return current.get();
+    }
+
+    /**
+     * Raises the watermarks to the ones of the supplied lin read where they are higher.
+     *
+     * @param observed
+     */
+    void merge(LinRead observed) {
+        if (observed.getIdsCount() == 0) {
+            return;
+        }
+        while (true) {
+            LinRead existing = current.get();
+            if (!advances(existing, observed)) {
+                return;
+            }
+            LinRead.Builder merged = existing.toBuilder().setSequencing(LinRead.Sequencing.CLIENT_SIDE);
+            for (Map.Entry<Integer, Long> id : observed.getIdsMap().entrySet()) {
+                if (id.getValue() > existing.getIdsOrDefault(id.getKey(), 0L)) {
+                    merged.putIds(id.getKey(), id.getValue());
+                }
+            }
+            if (current.compareAndSet(existing, merged.build())) {
+                return;
+            }
+        }
+    }
+
+    private static boolean advances(LinRead existing, LinRead observed) {
+        for (Map.Entry<Integer, Long> id : observed.getIdsMap().entrySet()) {
+            if (id.getValue() > existing.getIdsOrDefault(id.getKey(), 0L)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+/**
+ * Receives timings and counters of the remote operations performed by the client.
+ * The callbacks are invoked on GRPC threads for every single operation, so implementations
+ * must be thread safe, cheap and should not allocate.
+ *
+ * @author Michail Klimenkov
+ */
+public interface MetricsListener {
+
+    /**
+     * Listener that ignores everything, used when no metrics are configured.
+     */
+    MetricsListener NOOP = new MetricsListener() {
+    };
+
+    /**
+     * Invoked when a remote call completes successfully.
+     *
+     * @param type
+     * @param roundTripNanos - time from sending the request till receiving the response
+     * @param requestBytes   - serialised size of the request
+     * @param responseBytes  - serialised size of the response
+     */
+    default void onCall(OperationType type, long roundTripNanos, long requestBytes, long responseBytes) {
+    }
+
+    /**
+     * Invoked with the latency breakdown reported by the server.
+     *
+     * @param type
+     * @param parsingNanos
+     * @param processingNanos
+     * @param encodingNanos
+     */
+    default void onServerLatency(OperationType type, long parsingNanos, long processingNanos, long encodingNanos) {
+    }
+
+    /**
+     * Invoked with the time spent deserialising the response on the client side.
+     *
+     * @param type
+     * @param decodeNanos
+     */
+    default void onDecode(OperationType type, long decodeNanos) {
+    }
+
+    /**
+     * Invoked when the operation has been aborted due to a transaction conflict.
+     *
+     * @param type
+     */
+    default void onAbort(OperationType type) {
+    }
+
+    /**
+     * Invoked when the operation is about to be retried.
+     *
+     * @param type
+     */
+    default void onRetry(OperationType type) {
+    }
+
+    /**
+     * Invoked when the operation is let through by the in-flight limit, see {@link DClined#setMaxInFlight}.
+     *
+     * @param type
+     * @param priority
+     * @param queueNanos - time the operation waited for an in-flight slot
+     */
+    default void onQueue(OperationType type, Priority priority, long queueNanos) {
+    }
+}
@@ -0,0 +1,565 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.dgraph.DgraphProto.Mutation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Durable local buffer for one-off mutations. Mutations are appended to memory mapped journal segments and
+ * acknowledged as soon as they are synced to disk, which happens in batches every sync interval. A background
+ * thread replays the journal to DGraph in batches, retrying with back off while the cluster is unavailable,
+ * checkpoints the replayed position and deletes fully replayed segments. Example usage:
+ * <pre>
+ *     MutationJournal journal = new MutationJournal(client, Paths.get("/var/lib/myservice/journal"));
+ *     journal.set(nQuad("_:person", "person.email", "starmaker@mail.com"))
+ *             .thenRun(() -&gt; ...); //durable, will be committed eventually
+ * </pre>
+ * Note that:
+ * <ul>
+ *     <li>replay is at-least-once: a mutation may be applied again if the process dies before its batch is checkpointed,
+ *     so journaled mutations should be idempotent (e.g. use uids rather than blank nodes)</li>
+ *     <li>up to replayConcurrency consecutive mutations are sent concurrently and may be applied out of order;
+ *     set it to 1 for strict ordering</li>
+ *     <li>uids assigned to blank nodes are not reported back</li>
+ * </ul>
+ * Each record is stored as its length, CRC32 checksum and the serialised mutation.
+ *
+ * @author Michail Klimenkov
+ */
+public class MutationJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MutationJournal.class);
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final DClined client;
+    private final Function<Mutation, CompletableFuture<?>> sender;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int replayBatchSize;
+    private final int replayConcurrency;
+    private final ScheduledExecutorService syncer;
+    private final Thread replayer;
+    private volatile boolean closed;
+
+    //guarded by this
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private List<MappedByteBuffer> unsyncedBuffers = new ArrayList<>();
+    private List<CompletableFuture<Void>> unsyncedAcks = new ArrayList<>();
+
+    //segment in high, offset in low 32 bits of the position everything before which is durable
+    private volatile long synced;
+    private volatile long checkpointPosition;
+    private final Object syncedMonitor = new Object();
+
+    //confined to replayer thread
+    private long oldestSegment;
+    private long readSegment;
+    private int readOffset;
+    private long readBufferSegment = -1;
+    private MappedByteBuffer readBuffer;
+
+    /**
+     * Opens journal in the given directory with the default settings: 64MB segments, syncing every 10ms,
+     * replaying in batches of 1000 mutations with 16 of them in flight.
+     *
+     * @param client
+     * @param directory
+     */
+    public MutationJournal(DClined client, Path directory) {
+        this(client, directory, DEFAULT_SEGMENT_BYTES, 10, 1000, 16);
+    }
+
+    /**
+     * Opens journal in the given directory, replaying whatever has not been replayed before.
+     *
+     * @param client
+     * @param directory
+     * @param segmentBytes       - size of journal segment files, which also limits the size of a single mutation
+     * @param syncIntervalMillis - how often appended mutations are synced to disk and acknowledged
+     * @param replayBatchSize    - number of mutations replayed between checkpoints
+     * @param replayConcurrency  - number of mutations sent concurrently during replay
+     */
+    public MutationJournal(DClined client, Path directory, int segmentBytes, long syncIntervalMillis,
+                           int replayBatchSize, int replayConcurrency) {
+        this(client, client::mutate, directory, segmentBytes, syncIntervalMillis, replayBatchSize, replayConcurrency);
+    }
+
+    MutationJournal(DClined client, Function<Mutation, CompletableFuture<?>> sender, Path directory,
+                    int segmentBytes, long syncIntervalMillis, int replayBatchSize, int replayConcurrency) {
+        if (segmentBytes <= HEADER_BYTES || replayBatchSize <= 0 || replayConcurrency <= 0) {
+            throw new IllegalArgumentException("segmentBytes, replayBatchSize and replayConcurrency must be positive");
+        }
+        this.client = client;
+        this.sender = sender;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.replayBatchSize = replayBatchSize;
+        this.replayConcurrency = replayConcurrency;
+
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.syncer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "dclined-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncer.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+
+        this.replayer = new Thread(this::replay, "dclined-journal-replay");
+        this.replayer.setDaemon(true);
+        this.replayer.start();
+    }
+
+    /**
+     * Appends the set operation for the supplied nQuads.
+     *
+     * @param nQuads
+     * @return future completed once the mutation is durable
+     */
+    public CompletableFuture<Void> set(String nQuads) {
+        return append(client.newPayloadMutation(Mutation.Builder::setSetNquads, nQuads));
+    }
+
+    /**
+     * Appends the set operation for the supplied nQuads.
+     *
+     * @param nQuads
+     * @return future completed once the mutation is durable
+     */
+    public CompletableFuture<Void> set(NQuads nQuads) {
+        return set(nQuads.toString());
+    }
+
+    /**
+     * Appends the delete operation for the supplied nQuads.
+     *
+     * @param nQuads
+     * @return future completed once the mutation is durable
+     */
+    public CompletableFuture<Void> del(String nQuads) {
+        return append(client.newPayloadMutation(Mutation.Builder::setDelNquads, nQuads));
+    }
+
+    /**
+     * Appends the delete operation for the supplied nQuads.
+     *
+     * @param nQuads
+     * @return future completed once the mutation is durable
+     */
+    public CompletableFuture<Void> del(NQuads nQuads) {
+        return del(nQuads.toString());
+    }
+
+    /**
+     * Appends the supplied mutation, which will be replayed with commit now flag set.
+     *
+     * @param mutation
+     * @return future completed once the mutation is durable
+     */
+    public CompletableFuture<Void> append(Mutation mutation) {
+        byte[] bytes = mutation.toBuilder().setCommitNow(true).setStartTs(0).build().toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        int needed = HEADER_BYTES + bytes.length;
+        if (needed > segmentBytes) {
+            ack.completeExceptionally(new IllegalArgumentException(
+                    String.format("Mutation of %d bytes does not fit journal segment of %d bytes", bytes.length, segmentBytes)));
+            return ack;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                ack.completeExceptionally(new IllegalStateException("Journal is closed"));
+                return ack;
+            }
+            try {
+                if (writeBuffer.remaining() < needed) {
+                    unsyncedBuffers.add(writeBuffer);
+                    writeSegment++;
+                    writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+                }
+            } catch (IOException e) {
+                ack.completeExceptionally(e);
+                return ack;
+            }
+
+            int position = writeBuffer.position();
+            writeBuffer.putInt(position + 4, (int) crc.getValue());
+            writeBuffer.position(position + HEADER_BYTES);
+            writeBuffer.put(bytes);
+            // length goes last, so that a partially written record reads as the end of data
+            writeBuffer.putInt(position, bytes.length);
+            unsyncedAcks.add(ack);
+        }
+        return ack;
+    }
+
+    /**
+     * @return true if everything appended and synced so far has been replayed
+     */
+    public boolean isDrained() {
+        return checkpointPosition == synced;
+    }
+
+    private void sync() {
+        List<CompletableFuture<Void>> acks;
+        List<MappedByteBuffer> buffers;
+        long position;
+        synchronized (this) {
+            if (unsyncedAcks.isEmpty()) {
+                return;
+            }
+            acks = unsyncedAcks;
+            buffers = unsyncedBuffers;
+            unsyncedAcks = new ArrayList<>();
+            unsyncedBuffers = new ArrayList<>();
+            buffers.add(writeBuffer);
+            position = position(writeSegment, writeBuffer.position());
+        }
+
+        try {
+            for (MappedByteBuffer buffer : buffers) {
+                buffer.force();
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Failed to sync journal", e);
+            for (CompletableFuture<Void> ack : acks) {
+                ack.completeExceptionally(e);
+            }
+            return;
+        }
+
+        synced = position;
+        synchronized (syncedMonitor) {
+            syncedMonitor.notifyAll();
+        }
+        for (CompletableFuture<Void> ack : acks) {
+            ack.complete(null);
+        }
+    }
+
+    private void replay() {
+        long backoff = 0;
+        List<Mutation> batch = new ArrayList<>();
+        long batchEnd = 0;
+
+        while (!closed) {
+            try {
+                if (batch.isEmpty()) {
+                    batchEnd = readBatch(batch);
+                    if (batch.isEmpty()) {
+                        if (batchEnd != position(readSegment, readOffset)) {
+                            // only unreadable records were read, they are skipped for good
+                            readSegment = batchEnd >>> 32;
+                            readOffset = (int) batchEnd;
+                            writeCheckpoint();
+                            checkpointPosition = batchEnd;
+                            continue;
+                        }
+                        synchronized (syncedMonitor) {
+                            if (synced == position(readSegment, readOffset) && !closed) {
+                                syncedMonitor.wait(100);
+                            }
+                        }
+                        continue;
+                    }
+                }
+
+                send(batch);
+                batch.clear();
+                backoff = 0;
+
+                readSegment = batchEnd >>> 32;
+                readOffset = (int) batchEnd;
+                writeCheckpoint();
+                checkpointPosition = batchEnd;
+                compact();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                client.getMetrics().onRetry(OperationType.MUTATE);
+                backoff = backoff == 0 ? 50 : Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+                LOG.warn("Journal replay failed, {} mutations will be retried in {}ms: {}", batch.size(), backoff, e.toString());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the supplied mutations, removing the successfully sent ones from the list.
+     */
+    private void send(List<Mutation> batch) throws InterruptedException, ExecutionException {
+        List<Mutation> failed = new ArrayList<>();
+        ExecutionException failure = null;
+
+        for (int from = 0; from < batch.size(); from += replayConcurrency) {
+            int to = Math.min(batch.size(), from + replayConcurrency);
+            List<CompletableFuture<?>> window = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                window.add(sender.apply(batch.get(i)));
+            }
+            for (int i = from; i < to; i++) {
+                try {
+                    window.get(i - from).get();
+                } catch (ExecutionException e) {
+                    failed.add(batch.get(i));
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                failed.addAll(batch.subList(to, batch.size()));
+                break;
+            }
+        }
+
+        if (failure != null) {
+            // kept by position rather than equality, identical mutations are separate records
+            batch.clear();
+            batch.addAll(failed);
+            throw failure;
+        }
+    }
+
+    /**
+     * Reads up to replayBatchSize durable mutations following the read position.
+     *
+     * @return position following the last read mutation
+     */
+    private long readBatch(List<Mutation> batch) throws IOException {
+        long limit = synced;
+        long limitSegment = limit >>> 32;
+        int limitOffset = (int) limit;
+
+        long segment = readSegment;
+        int offset = readOffset;
+        while (batch.size() < replayBatchSize && (segment < limitSegment || offset < limitOffset)) {
+            ByteBuffer buffer = readBuffer(segment);
+            int length = offset + HEADER_BYTES <= buffer.capacity() ? buffer.getInt(offset) : 0;
+            if (length <= 0) {
+                if (segment < limitSegment) {
+                    segment++;
+                    offset = 0;
+                    continue;
+                }
+                // synced data can not end before the limit
+                LOG.error("Missing journal record in segment {} at offset {}, skipping rest of the segment", segment, offset);
+                offset = limitOffset;
+                break;
+            }
+
+            byte[] bytes = new byte[Math.min(length, buffer.capacity() - offset - HEADER_BYTES)];
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset + HEADER_BYTES);
+            record.get(bytes);
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            if (bytes.length < length || (int) crc.getValue() != buffer.getInt(offset + 4)) {
+                LOG.error("Corrupted journal record in segment {} at offset {}, skipping rest of the segment", segment, offset);
+                if (segment < limitSegment) {
+                    segment++;
+                    offset = 0;
+                    continue;
+                }
+                // everything up to the limit is already synced and can not be repaired by waiting
+                offset = limitOffset;
+                break;
+            }
+
+            try {
+                batch.add(Mutation.parseFrom(bytes));
+            } catch (InvalidProtocolBufferException e) {
+                LOG.error("Unreadable journal record in segment {} at offset {}, skipping it", segment, offset);
+            }
+            offset += HEADER_BYTES + length;
+        }
+        return position(segment, offset);
+    }
+
+    private ByteBuffer readBuffer(long segment) throws IOException {
+        if (segment != readBufferSegment) {
+            readBuffer = map(segment, FileChannel.MapMode.READ_ONLY);
+            readBufferSegment = segment;
+        }
+        return readBuffer;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+
+        TreeSet<Long> segments = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer position = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            readSegment = position.getLong();
+            readOffset = (int) position.getLong();
+        } else {
+            readSegment = segments.isEmpty() ? 0 : segments.first();
+            readOffset = 0;
+        }
+        oldestSegment = segments.isEmpty() ? readSegment : Math.min(segments.first(), readSegment);
+
+        writeSegment = segments.isEmpty() ? readSegment : Math.max(segments.last(), readSegment);
+        writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+        writeBuffer.position(endOfData(writeBuffer));
+
+        synced = position(writeSegment, writeBuffer.position());
+        checkpointPosition = position(readSegment, readOffset);
+    }
+
+    private static int endOfData(ByteBuffer buffer) {
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + HEADER_BYTES);
+            record.get(bytes);
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private MappedByteBuffer map(long segment, FileChannel.MapMode mode) throws IOException {
+        Path file = segmentFile(segment);
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return channel.map(mode, 0, channel.size());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(mode, 0, Math.max(segmentBytes, channel.size()));
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        Path temp = directory.resolve(CHECKPOINT + ".tmp");
+        ByteBuffer position = ByteBuffer.allocate(16);
+        position.putLong(readSegment).putLong(readOffset).flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (position.hasRemaining()) {
+                channel.write(position);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void compact() {
+        while (oldestSegment < readSegment) {
+            try {
+                Files.deleteIfExists(segmentFile(oldestSegment));
+            } catch (IOException e) {
+                LOG.warn("Failed to delete replayed journal segment {}", oldestSegment, e);
+                return;
+            }
+            oldestSegment++;
+        }
+    }
+
+    private Path segmentFile(long segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static long position(long segment, int offset) {
+        return segment << 32 | offset;
+    }
+
+    /**
+     * Syncs the pending mutations and stops replaying. Mutations that have not been replayed yet
+     * will be replayed when the journal is opened again.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        replayer.interrupt();
+        try {
+            replayer.join(MAX_BACKOFF_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(MAX_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+/**
+ * Writes objects of {@link DgraphNode} classes as nquads without reflection. Implementations are generated
+ * at compile time by {@link NodeEncoderProcessor}, example usage:
+ * <pre>
+ *     &#64;DgraphNode
+ *     public class Person {
+ *         String uid;
+ *         &#64;Predicate("person.email")
+ *         String email;
+ *         &#64;SerializedName("person.address")
+ *         Address address;
+ *     }
+ *     ...
+ *     client.setNodes(people);
+ * </pre>
+ * Nested nodes are written as blank nodes unless they have uid, null fields of existing nodes delete all values
+ * of their predicates. Object graphs must not have cycles.
+ *
+ * @param <T> the type of the nodes
+ * @author Michail Klimenkov
+ */
+public interface NodeEncoder<T> {
+
+    /**
+     * Suffix of the name of the generated encoders.
+     */
+    String SUFFIX = "_NQuadEncoder";
+
+    /**
+     * Writes the node and the nodes it refers to.
+     *
+     * @param node
+     * @param writer
+     * @return subject of the node, uid or blank node reference
+     */
+    String encode(T node, NodeWriter writer);
+
+    /**
+     * Retrieves the generated encoder of the given class.
+     *
+     * @param type - class annotated with {@link DgraphNode}
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static <T> NodeEncoder<T> of(Class<T> type) {
+        return (NodeEncoder<T>) NodeWriter.ENCODERS.get(type);
+    }
+}
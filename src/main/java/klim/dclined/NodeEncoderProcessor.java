@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates {@link NodeEncoder}s of the classes annotated with {@link DgraphNode}. Every field is written by
+ * a direct call on the value builder matching its Java type, so encoding needs neither reflection nor boxing.
+ * <p>
+ * The processor is registered in META-INF/services, so javac picks it up whenever the library is on the compile
+ * class path. It is only invoked for sources using {@link DgraphNode}; builds that do not want it can disable
+ * annotation processing with {@code -proc:none} or list their processors explicitly with {@code -processor}.
+ *
+ * @author Michail Klimenkov
+ */
+@SupportedAnnotationTypes("klim.dclined.DgraphNode")
+public class NodeEncoderProcessor extends AbstractProcessor {
+
+    private static final String VALUE = "io.dgraph.DgraphProto.Value.newBuilder()";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(DgraphNode.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@DgraphNode must annotate a class");
+                continue;
+            }
+            try {
+                generate((TypeElement) element);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String encoderName = encoderName(type);
+        String typeName = type.getQualifiedName().toString();
+
+        StringBuilder body = new StringBuilder();
+        String uid = null;
+        int local = 0;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            String accessor = accessor(type, field);
+            if (accessor == null) {
+                error(field, "Field must not be private or must have a non-private getter");
+                return;
+            }
+            String predicate = predicate(field);
+            String literal = processingEnv.getElementUtils().getConstantExpression(predicate);
+            if ("uid".equals(predicate)) {
+                if (!field.asType().toString().equals(String.class.getName())) {
+                    error(field, "Field holding uid must be a String");
+                    return;
+                }
+                uid = accessor;
+                continue;
+            }
+            String variable = "v" + local++;
+            TypeMirror fieldType = field.asType();
+            body.append("        ").append(fieldType).append(' ').append(variable).append(" = ").append(accessor).append(";\n");
+            if (fieldType.getKind().isPrimitive()) {
+                body.append("        writer.set(subject, ").append(literal).append(", ")
+                        .append(primitiveValue(fieldType.getKind(), variable)).append(");\n");
+                continue;
+            }
+            body.append("        if (").append(variable).append(" == null) {\n")
+                    .append("            writer.delete(subject, ").append(literal).append(");\n")
+                    .append("        } else {\n");
+            TypeMirror elementType = iterableElement(fieldType);
+            if (elementType == null) {
+                body.append(write(literal, fieldType, variable, "            "));
+            } else {
+                String element = "e" + local++;
+                body.append("            for (").append(elementType).append(' ').append(element).append(" : ").append(variable).append(") {\n")
+                        .append(write(literal, elementType, element, "                "))
+                        .append("            }\n");
+            }
+            body.append("        }\n");
+        }
+
+        String qualifiedName = packageName.isEmpty() ? encoderName : packageName + "." + encoderName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write((packageName.isEmpty() ? "" : "package " + packageName + ";\n\n")
+                    + "/**\n * Generated by " + NodeEncoderProcessor.class.getName() + ", do not edit.\n */\n"
+                    + "public final class " + encoderName + " implements klim.dclined.NodeEncoder<" + typeName + "> {\n\n"
+                    + "    public static final " + encoderName + " INSTANCE = new " + encoderName + "();\n\n"
+                    + "    @Override\n"
+                    + "    public String encode(" + typeName + " node, klim.dclined.NodeWriter writer) {\n"
+                    + "        String subject = writer.subject(" + (uid == null ? "null" : uid) + ");\n"
+                    + body
+                    + "        return subject;\n"
+                    + "    }\n"
+                    + "}\n");
+        }
+    }
+
+    /**
+     * @param predicate - string literal of the predicate
+     */
+    private String write(String predicate, TypeMirror type, String variable, String indent) {
+        if (isNode(type)) {
+            return indent + "writer.setUid(subject, " + predicate + ", "
+                    + encoderReference((TypeElement) ((DeclaredType) type).asElement()) + ".INSTANCE.encode(" + variable + ", writer));\n";
+        }
+        String value = boxedValue(type, variable);
+        return indent + "writer.set(subject, " + predicate + ", " + (value == null ? variable : value) + ");\n";
+    }
+
+    private static String primitiveValue(TypeKind kind, String variable) {
+        switch (kind) {
+            case BOOLEAN:
+                return VALUE + ".setBoolVal(" + variable + ").build()";
+            case FLOAT:
+            case DOUBLE:
+                return VALUE + ".setDoubleVal(" + variable + ").build()";
+            case CHAR:
+                return VALUE + ".setStrVal(String.valueOf(" + variable + ")).build()";
+            default:
+                return VALUE + ".setIntVal(" + variable + ").build()";
+        }
+    }
+
+    /**
+     * @return value built directly for the well known types or null if the type is to be inferred at runtime
+     */
+    private String boxedValue(TypeMirror type, String variable) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        switch (((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString()) {
+            case "java.lang.String":
+                return VALUE + ".setStrVal(" + variable + ").build()";
+            case "java.lang.Boolean":
+                return VALUE + ".setBoolVal(" + variable + ").build()";
+            case "java.lang.Float":
+            case "java.lang.Double":
+                return VALUE + ".setDoubleVal(" + variable + ").build()";
+            case "java.lang.Byte":
+            case "java.lang.Short":
+            case "java.lang.Integer":
+            case "java.lang.Long":
+                return VALUE + ".setIntVal(" + variable + ".longValue()).build()";
+            default:
+                return null;
+        }
+    }
+
+    private TypeMirror iterableElement(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement iterable = processingEnv.getElementUtils().getTypeElement(Iterable.class.getName());
+        TypeMirror erasure = processingEnv.getTypeUtils().erasure(iterable.asType());
+        if (!processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type), erasure)) {
+            return null;
+        }
+        for (TypeMirror supertype : supertypes(type)) {
+            if (processingEnv.getTypeUtils().isSameType(processingEnv.getTypeUtils().erasure(supertype), erasure)) {
+                List<? extends TypeMirror> arguments = ((DeclaredType) supertype).getTypeArguments();
+                if (!arguments.isEmpty() && arguments.get(0).getKind() == TypeKind.DECLARED) {
+                    return arguments.get(0);
+                }
+            }
+        }
+        return processingEnv.getElementUtils().getTypeElement(Object.class.getName()).asType();
+    }
+
+    private List<TypeMirror> supertypes(TypeMirror type) {
+        List<TypeMirror> all = new ArrayList<>();
+        Deque<TypeMirror> pending = new ArrayDeque<>();
+        pending.add(type);
+        while (!pending.isEmpty()) {
+            TypeMirror next = pending.poll();
+            all.add(next);
+            pending.addAll(processingEnv.getTypeUtils().directSupertypes(next));
+        }
+        return all;
+    }
+
+    private static boolean isNode(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((DeclaredType) type).asElement().getAnnotation(DgraphNode.class) != null;
+    }
+
+    private static String accessor(TypeElement type, VariableElement field) {
+        if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+            return "node." + field.getSimpleName();
+        }
+        String name = field.getSimpleName().toString();
+        String capitalised = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            String methodName = method.getSimpleName().toString();
+            if (method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && (methodName.equals("get" + capitalised) || methodName.equals("is" + capitalised))) {
+                return "node." + methodName + "()";
+            }
+        }
+        return null;
+    }
+
+    private static String predicate(VariableElement field) {
+        Predicate predicate = field.getAnnotation(Predicate.class);
+        if (predicate != null) {
+            return predicate.value();
+        }
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals("com.google.gson.annotations.SerializedName")) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+                    if (value.getKey().getSimpleName().contentEquals("value")) {
+                        return value.getValue().getValue().toString();
+                    }
+                }
+            }
+        }
+        return field.getSimpleName().toString();
+    }
+
+    private String encoderName(TypeElement type) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        return binaryName.substring(binaryName.lastIndexOf('.') + 1).replace('$', '_') + NodeEncoder.SUFFIX;
+    }
+
+    private String encoderReference(TypeElement type) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        return (packageName.isEmpty() ? "" : packageName + ".") + encoderName(type);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects nquads written by {@link NodeEncoder}s into the set and delete parts of one mutation.
+ * Blank nodes are numbered in the order the nodes are written: _:n0, _:n1, ...
+ *
+ * @author Michail Klimenkov
+ */
+public class NodeWriter {
+
+    static final ClassValue<NodeEncoder<?>> ENCODERS = new ClassValue<NodeEncoder<?>>() {
+        @Override
+        protected NodeEncoder<?> computeValue(Class<?> type) {
+            String name = type.getName();
+            int packageEnd = name.lastIndexOf('.') + 1;
+            String encoder = name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + NodeEncoder.SUFFIX;
+            try {
+                return (NodeEncoder<?>) Class.forName(encoder, true, type.getClassLoader()).getField("INSTANCE").get(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("No encoder generated for " + name + ", is it annotated with @DgraphNode?", e);
+            }
+        }
+    };
+
+    private final List<NQuad> set = new ArrayList<>();
+    private final List<NQuad> del = new ArrayList<>();
+    private int blankNodes;
+
+    /**
+     * Writes the node with its generated encoder.
+     *
+     * @param node
+     * @return subject of the node
+     */
+    @SuppressWarnings("unchecked")
+    public String write(Object node) {
+        return ((NodeEncoder<Object>) ENCODERS.get(node.getClass())).encode(node, this);
+    }
+
+    /**
+     * @param uid - uid of the node, null or empty for new nodes
+     * @return subject of the node
+     */
+    public String subject(String uid) {
+        if (uid == null || uid.isEmpty()) {
+            return "_:n" + blankNodes++;
+        }
+        if (uid.startsWith("<") && uid.endsWith(">")) {
+            return uid.substring(1, uid.length() - 1);
+        }
+        return uid;
+    }
+
+    public void set(String subject, String predicate, Value value) {
+        set.add(NQuad.newBuilder().setSubject(subject).setPredicate(predicate).setObjectValue(value).build());
+    }
+
+    /**
+     * Writes value whose type is known only at runtime, encoded as by {@link TypedNQuads}.
+     */
+    public void set(String subject, String predicate, Object value) {
+        set(subject, predicate, TypedNQuads.encodeValue(predicate, TypedNQuads.inferType(value), value));
+    }
+
+    public void setUid(String subject, String predicate, String object) {
+        set.add(NQuad.newBuilder().setSubject(subject).setPredicate(predicate).setObjectId(object).build());
+    }
+
+    /**
+     * Deletes all values of the predicate of an existing node; ignored for blank nodes, which have no values yet.
+     */
+    public void delete(String subject, String predicate) {
+        if (subject.startsWith("_:")) {
+            return;
+        }
+        del.add(NQuad.newBuilder().setSubject(subject).setPredicate(predicate)
+                .setObjectValue(Value.newBuilder().setDefaultVal("_STAR_ALL")).build());
+    }
+
+    public List<NQuad> getSet() {
+        return set;
+    }
+
+    public List<NQuad> getDel() {
+        return del;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.dgraph.DgraphProto;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BinaryOperator;
+
+/**
+ * Query executed page by page at one start timestamp. The query must declare the variables {@code $first: int}
+ * and {@code $after: string} and use them to paginate its first block, e.g.
+ * {@code people(func: has(person.email), first: $first, after: $after)}. Pages are requested one after another,
+ * each one after the last uid of the previous page, and their decoded results are folded with the stitch
+ * function, so that no more than one page of raw response is held at a time.
+ *
+ * @author Michail Klimenkov
+ */
+class PagedQuery<T> {
+
+    static final String FIRST = "$first";
+    static final String AFTER = "$after";
+
+    private final AbstractClient snapshot;
+    private final String query;
+    private final Map<String, String> variables;
+    private final TypeToken<T> type;
+    private final int maxResponseBytes;
+    private final int pageSize;
+    private final BinaryOperator<T> stitch;
+
+    PagedQuery(AbstractClient snapshot, String query, Map<String, String> variables, TypeToken<T> type,
+               int maxResponseBytes, int pageSize, BinaryOperator<T> stitch) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.snapshot = snapshot;
+        this.query = query;
+        this.variables = variables;
+        this.type = type;
+        this.maxResponseBytes = maxResponseBytes;
+        this.pageSize = pageSize;
+        this.stitch = stitch;
+    }
+
+    CompletableFuture<T> execute() {
+        return page(Uids.format(0), null);
+    }
+
+    private CompletableFuture<T> page(String after, T stitched) {
+        Map<String, String> pageVariables = new HashMap<>(variables);
+        pageVariables.put(FIRST, String.valueOf(pageSize));
+        pageVariables.put(AFTER, after);
+
+        return snapshot.execute(query, pageVariables, maxResponseBytes, (DgraphProto.Response response) -> {
+            Page<T> page = cursor(response, null);
+            page.result = snapshot.decode(response.getJson(), type);
+            return page;
+        }).thenCompose((Page<T> page) -> {
+            T result = stitched == null ? page.result : stitch.apply(stitched, page.result);
+            if (page.count < pageSize || page.lastUid == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return page(page.lastUid, result);
+        });
+    }
+
+    /**
+     * Counts the nodes of the first block of the response and finds the uid of the last one, without decoding it.
+     *
+     * @param response
+     * @param uids     - collects the uids of all the nodes of the first block, may be null
+     * @param <T>
+     * @return
+     */
+    static <T> Page<T> cursor(DgraphProto.Response response, LongArrayList uids) {
+        Page<T> page = new Page<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(response.getJson().newInput(), StandardCharsets.UTF_8))) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return page;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    page.count++;
+                    page.lastUid = uid(reader);
+                    if (uids != null && page.lastUid != null) {
+                        uids.add(Uids.parse(page.lastUid));
+                    }
+                }
+                return page;
+            }
+            return page;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String uid(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String uid = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("uid".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                uid = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return uid;
+    }
+
+    static class Page<T> {
+        int count;
+        String lastUid;
+        T result;
+    }
+}
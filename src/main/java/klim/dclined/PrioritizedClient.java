@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphGrpc.DgraphStub;
+import io.dgraph.DgraphProto.Mutation;
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.TxnContext;
+
+import java.util.function.BiConsumer;
+
+/**
+ * View of a {@link DClined} client that dispatches its operations with a different priority,
+ * see {@link DClined#withPriority(Priority)}. Everything else is shared with the client.
+ *
+ * @author Michail Klimenkov
+ */
+class PrioritizedClient extends AbstractClient {
+
+    private final DClined client;
+    private final Priority priority;
+
+    PrioritizedClient(DClined client, Priority priority) {
+        this.client = client;
+        this.priority = priority;
+    }
+
+    @Override
+    protected TransactionState getState() {
+        return client.getState();
+    }
+
+    @Override
+    protected DgraphStub getStub(OperationType type) {
+        return client.getStub(type);
+    }
+
+    @Override
+    protected AbstractClient snapshot() {
+        return client.newSnapshot(priority);
+    }
+
+    @Override
+    protected MetricsListener getMetrics() {
+        return client.getMetrics();
+    }
+
+    @Override
+    protected SlowOperationLog getSlowOperationLog() {
+        return client.getSlowOperationLog();
+    }
+
+    @Override
+    protected Compression getCompression() {
+        return client.getCompression();
+    }
+
+    @Override
+    protected LinReadWatermarks getLinReadWatermarks() {
+        return client.getLinReadWatermarks();
+    }
+
+    @Override
+    protected int getMaxResponseBytes() {
+        return client.getMaxResponseBytes();
+    }
+
+    @Override
+    protected Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    protected PriorityDispatcher getDispatcher() {
+        return client.getDispatcher();
+    }
+
+    @Override
+    protected void mergeContext(TxnContext context) {
+        client.mergeContext(context);
+    }
+
+    @Override
+    protected Mutation newMutation(BiConsumer<Mutation.Builder, NQuad> aggregator, NQuad... nQuads) {
+        return client.newMutation(aggregator, nQuads);
+    }
+
+    @Override
+    protected Mutation newPayloadMutation(BiConsumer<Mutation.Builder, ByteString> payloadSetter, ByteString payload) {
+        return client.newPayloadMutation(payloadSetter, payload);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+/**
+ * Priority class of the operations of a client, see {@link DClined#setMaxInFlight}. Once the in-flight limit
+ * is reached, queued operations are dispatched in proportion to the weights of their classes.
+ *
+ * @author Michail Klimenkov
+ */
+public enum Priority {
+
+    /**
+     * Latency critical operations, e.g. serving user requests.
+     */
+    INTERACTIVE(16),
+
+    DEFAULT(4),
+
+    /**
+     * Background operations that can tolerate queueing, e.g. imports and clean ups.
+     */
+    BULK(1);
+
+    private final int weight;
+
+    Priority(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Limits the number of operations of a client in flight. Operations beyond the limit are queued per
+ * {@link Priority} and dispatched by stride scheduling, a deterministic form of weighted fair queueing:
+ * every class advances its pass by the inverse of its weight on each dispatch and the non-empty class
+ * with the lowest pass goes next. A class that was idle resumes at the current pass, so it can not
+ * claim the turns it did not use.
+ *
+ * @author Michail Klimenkov
+ */
+class PriorityDispatcher {
+
+    private static final long STRIDE = 1 << 20;
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final List<ArrayDeque<CompletableFuture<Long>>> queues = new ArrayList<>(PRIORITIES.length);
+    private final long[] passes = new long[PRIORITIES.length];
+    private long pass;
+    private int queued;
+    private int inFlight;
+    private int maxInFlight;
+
+    PriorityDispatcher() {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Obtains permit to send an operation, to be returned with {@link #release()} once the operation completes.
+     *
+     * @param priority
+     * @return future completed with {@link System#nanoTime()} of the dispatch
+     */
+    CompletableFuture<Long> acquire(Priority priority) {
+        CompletableFuture<Long> permit;
+        synchronized (this) {
+            if (queued == 0 && (maxInFlight == 0 || inFlight < maxInFlight)) {
+                inFlight++;
+                permit = null;
+            } else {
+                int i = priority.ordinal();
+                if (queues.get(i).isEmpty()) {
+                    passes[i] = Math.max(passes[i], pass);
+                }
+                permit = new CompletableFuture<>();
+                queues.get(i).add(permit);
+                queued++;
+            }
+        }
+        return permit == null ? CompletableFuture.completedFuture(System.nanoTime()) : permit;
+    }
+
+    void release() {
+        CompletableFuture<Long> next;
+        synchronized (this) {
+            inFlight--;
+            next = next();
+        }
+        if (next != null) {
+            next.complete(System.nanoTime());
+        }
+    }
+
+    /**
+     * @param maxInFlight - 0 for no limit
+     */
+    void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("In-flight limit must not be negative: " + maxInFlight);
+        }
+        synchronized (this) {
+            this.maxInFlight = maxInFlight;
+        }
+        while (true) {
+            CompletableFuture<Long> next;
+            synchronized (this) {
+                next = next();
+            }
+            if (next == null) {
+                return;
+            }
+            next.complete(System.nanoTime());
+        }
+    }
+
+    synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getQueued(Priority priority) {
+        return queues.get(priority.ordinal()).size();
+    }
+
+    private CompletableFuture<Long> next() {
+        if (queued == 0 || (maxInFlight > 0 && inFlight >= maxInFlight)) {
+            return null;
+        }
+        int selected = -1;
+        for (int i = 0; i < queues.size(); i++) {
+            if (!queues.get(i).isEmpty() && (selected < 0 || passes[i] < passes[selected])) {
+                selected = i;
+            }
+        }
+        pass = passes[selected];
+        passes[selected] += STRIDE / PRIORITIES[selected].getWeight();
+        queued--;
+        inFlight++;
+        return queues.get(selected).poll();
+    }
+}
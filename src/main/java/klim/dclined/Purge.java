@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphProto;
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.Value;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Deletes all the nodes matched by a selection query. The uids are read page by page at one start timestamp,
+ * while the nodes of the previous page are deleted with {@code <uid> * * .} nquads in batches of batchSize,
+ * running up to parallelism delete mutations at a time. The selection query must declare the variables
+ * {@code $first: int} and {@code $after: string} and use them to paginate its first block. Example usage:
+ * <pre>
+ *     client.purge("query expired($first: int, $after: string) { "
+ *                     + "expired(func: lt(session.expires, \"2018-01-01\"), first: $first, after: $after) { uid } }")
+ *             .batchSize(1000)
+ *             .rateLimit(5000)
+ *             .onProgress((PurgeResult progress) -&gt; LOG.info("Purged {}", progress.getDeleted()))
+ *             .execute();
+ * </pre>
+ * Every batch commits on its own; batches aborted by conflicting transactions are retried with exponential backoff.
+ *
+ * @author Michail Klimenkov
+ */
+public class Purge {
+
+    private static final String STAR = "_STAR_ALL";
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "dclined-purge-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DClined client;
+    private final String query;
+    private final Map<String, String> variables;
+    private int pageSize = 10_000;
+    private int batchSize = 1000;
+    private int parallelism = 4;
+    private double rateLimit;
+    private int maxRetries = 5;
+    private Consumer<PurgeResult> progressListener = (PurgeResult progress) -> {
+    };
+
+    Purge(DClined client, String query, Map<String, String> variables) {
+        this.client = client;
+        this.query = query;
+        this.variables = variables;
+    }
+
+    /**
+     * Number of uids read by a single query, defaults to 10000.
+     */
+    public Purge pageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Number of nodes deleted by a single mutation, defaults to 1000.
+     */
+    public Purge batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Number of delete mutations executed concurrently, defaults to 4.
+     */
+    public Purge parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Maximal number of nodes deleted per second, 0 for unlimited (default).
+     */
+    public Purge rateLimit(double nodesPerSecond) {
+        this.rateLimit = nodesPerSecond;
+        return this;
+    }
+
+    /**
+     * Number of times an aborted batch is retried before the purge fails, defaults to 5.
+     */
+    public Purge maxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Listener notified with the running counts after every batch, invoked on GRPC threads.
+     */
+    public Purge onProgress(Consumer<PurgeResult> progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Executes the purge.
+     *
+     * @return counts of the selected and deleted nodes
+     */
+    public CompletableFuture<PurgeResult> execute() {
+        if (pageSize <= 0 || batchSize <= 0 || parallelism <= 0) {
+            throw new IllegalStateException("pageSize, batchSize and parallelism must be positive");
+        }
+
+        AbstractClient snapshot = client.snapshot();
+        Progress progress = new Progress();
+        return purge(snapshot, select(snapshot, Uids.format(0)), progress)
+                .thenApply((v) -> progress.toResult());
+    }
+
+    private CompletableFuture<long[]> select(AbstractClient snapshot, String after) {
+        Map<String, String> pageVariables = new HashMap<>(variables);
+        pageVariables.put(PagedQuery.FIRST, String.valueOf(pageSize));
+        pageVariables.put(PagedQuery.AFTER, after);
+        return snapshot.execute(query, pageVariables, (DgraphProto.Response response) -> {
+            LongArrayList uids = new LongArrayList();
+            PagedQuery.cursor(response, uids);
+            return uids.toArray();
+        });
+    }
+
+    private CompletableFuture<Void> purge(AbstractClient snapshot, CompletableFuture<long[]> page, Progress progress) {
+        return page.thenCompose((long[] uids) -> {
+            if (uids.length == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            progress.pages.incrementAndGet();
+            progress.selected.addAndGet(uids.length);
+
+            CompletableFuture<long[]> next = uids.length < pageSize
+                    ? CompletableFuture.completedFuture(new long[0])
+                    : select(snapshot, Uids.format(uids[uids.length - 1]));
+
+            Batches batches = new Batches(uids);
+            CompletableFuture<?>[] workers = new CompletableFuture<?>[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                workers[i] = deleteBatches(batches, progress);
+            }
+            return CompletableFuture.allOf(workers)
+                    .thenCompose((v) -> purge(snapshot, next, progress));
+        });
+    }
+
+    private CompletableFuture<Void> deleteBatches(Batches batches, Progress progress) {
+        int from = batches.cursor.getAndIncrement() * batchSize;
+        if (from >= batches.uids.length) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int to = Math.min(batches.uids.length, from + batchSize);
+
+        NQuad[] nQuads = new NQuad[to - from];
+        for (int i = from; i < to; i++) {
+            nQuads[i - from] = NQuad.newBuilder()
+                    .setSubject(Uids.format(batches.uids[i]))
+                    .setPredicate(STAR)
+                    .setObjectValue(Value.newBuilder().setDefaultVal(STAR))
+                    .build();
+        }
+
+        return delay(progress.acquire(nQuads.length))
+                .thenCompose((v) -> delete(nQuads, 0, progress))
+                .thenCompose((v) -> {
+                    progress.deleted.addAndGet(nQuads.length);
+                    progressListener.accept(progress.toResult());
+                    return deleteBatches(batches, progress);
+                });
+    }
+
+    private CompletableFuture<Void> delete(NQuad[] nQuads, int attempt, Progress progress) {
+        return client.del(nQuads)
+                .handle((Map<String, String> uids, Throwable throwable) -> throwable)
+                .thenCompose((Throwable throwable) -> {
+                    if (throwable == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof TransactionAbortedException && attempt < maxRetries) {
+                        progress.retries.incrementAndGet();
+                        client.getMetrics().onRetry(OperationType.MUTATE);
+                        long backoff = Math.min(MAX_BACKOFF_MILLIS, 50L << attempt);
+                        return delay(TimeUnit.MILLISECONDS.toNanos(backoff))
+                                .thenCompose((v) -> delete(nQuads, attempt + 1, progress));
+                    }
+                    CompletableFuture<Void> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(cause);
+                    return failed;
+                });
+    }
+
+    private static CompletableFuture<Void> delay(long nanos) {
+        if (nanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> delayed = new CompletableFuture<>();
+        SCHEDULER.schedule(() -> delayed.complete(null), nanos, TimeUnit.NANOSECONDS);
+        return delayed;
+    }
+
+    private class Progress {
+        private final AtomicInteger pages = new AtomicInteger();
+        private final AtomicLong selected = new AtomicLong();
+        private final AtomicLong deleted = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong nextPermit = new AtomicLong(System.nanoTime());
+
+        /**
+         * Reserves permits for the given number of nodes.
+         *
+         * @return nanoseconds to wait before the nodes may be deleted
+         */
+        long acquire(int nodes) {
+            if (rateLimit <= 0) {
+                return 0;
+            }
+            long cost = (long) (nodes * TimeUnit.SECONDS.toNanos(1) / rateLimit);
+            while (true) {
+                long now = System.nanoTime();
+                long permit = nextPermit.get();
+                long start = permit - now > 0 ? permit : now;
+                if (nextPermit.compareAndSet(permit, start + cost)) {
+                    return start - now;
+                }
+            }
+        }
+
+        PurgeResult toResult() {
+            return new PurgeResult(pages.get(), selected.get(), deleted.get(), retries.get());
+        }
+    }
+
+    private static class Batches {
+        private final long[] uids;
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        Batches(long[] uids) {
+            this.uids = uids;
+        }
+    }
+}
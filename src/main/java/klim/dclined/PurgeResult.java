@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+/**
+ * Counts of the nodes selected and deleted by {@link Purge}, either final or reported as progress.
+ *
+ * @author Michail Klimenkov
+ */
+public class PurgeResult {
+
+    private final int pages;
+    private final long selected;
+    private final long deleted;
+    private final long retries;
+
+    PurgeResult(int pages, long selected, long deleted, long retries) {
+        this.pages = pages;
+        this.selected = selected;
+        this.deleted = deleted;
+        this.retries = retries;
+    }
+
+    /**
+     * @return number of pages of uids read so far
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * @return number of nodes matched by the selection query so far
+     */
+    public long getSelected() {
+        return selected;
+    }
+
+    /**
+     * @return number of nodes whose deletion has been committed
+     */
+    public long getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return number of delete mutations repeated after an abort
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    @Override
+    public String toString() {
+        return "PurgeResult{pages=" + pages + ", selected=" + selected + ", deleted=" + deleted + ", retries=" + retries + "}";
+    }
+}
@@ -16,6 +16,7 @@
 package klim.dclined;
 
 import java.util.Map;
+import java.util.Objects;
 
 import static java.util.Collections.emptyMap;
 
@@ -44,4 +45,21 @@ public class Query {
     public Map<String, String> getVariables() {
         return variables;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Query)) {
+            return false;
+        }
+        Query other = (Query) o;
+        return query.equals(other.query) && variables.equals(other.variables);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(query, variables);
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query block of {@link QueryBuilder}: either a root block selecting nodes with a function, or an edge followed
+ * from the nodes of the enclosing block. Pagination arguments accept numbers or variables, see {@link QueryFunction#var}.
+ *
+ * @author Michail Klimenkov
+ */
+public class QueryBlock {
+
+    private final String name;
+    private final boolean root;
+    private QueryFunction function;
+    private QueryFunction filter;
+    private final List<String> arguments = new ArrayList<>();
+    private final List<Object> selection = new ArrayList<>();
+
+    private QueryBlock(String name, boolean root) {
+        this.name = name;
+        this.root = root;
+    }
+
+    /**
+     * @param name - name of the block in the response
+     * @return root block
+     */
+    public static QueryBlock block(String name) {
+        return new QueryBlock(name, true);
+    }
+
+    /**
+     * @param predicate - predicate to follow, prefix with ~ for reverse edges
+     * @return nested block
+     */
+    public static QueryBlock edge(String predicate) {
+        return new QueryBlock(predicate, false);
+    }
+
+    /**
+     * Root function selecting the nodes of a root block.
+     */
+    public QueryBlock func(QueryFunction function) {
+        if (!root) {
+            throw new IllegalStateException("Only root blocks have functions, use filter for edge " + name);
+        }
+        this.function = function;
+        return this;
+    }
+
+    public QueryBlock filter(QueryFunction filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public QueryBlock first(long first) {
+        return argument("first", first);
+    }
+
+    public QueryBlock first(QueryFunction.Variable first) {
+        return argument("first", first);
+    }
+
+    public QueryBlock offset(long offset) {
+        return argument("offset", offset);
+    }
+
+    public QueryBlock offset(QueryFunction.Variable offset) {
+        return argument("offset", offset);
+    }
+
+    /**
+     * @param after - uid to continue after
+     */
+    public QueryBlock after(long after) {
+        return argument("after", Uids.format(after));
+    }
+
+    public QueryBlock after(QueryFunction.Variable after) {
+        return argument("after", after);
+    }
+
+    public QueryBlock orderAsc(String predicate) {
+        return argument("orderasc", predicate);
+    }
+
+    public QueryBlock orderDesc(String predicate) {
+        return argument("orderdesc", predicate);
+    }
+
+    /**
+     * Selects scalar predicates of the nodes, e.g. uid, person.email or count(friend).
+     */
+    public QueryBlock select(String... predicates) {
+        Collections.addAll(selection, (Object[]) predicates);
+        return this;
+    }
+
+    /**
+     * Selects nested edges of the nodes.
+     */
+    public QueryBlock select(QueryBlock... edges) {
+        for (QueryBlock edge : edges) {
+            if (edge.root) {
+                throw new IllegalArgumentException("Root block " + edge.name + " can not be nested");
+            }
+            selection.add(edge);
+        }
+        return this;
+    }
+
+    private QueryBlock argument(String name, Object value) {
+        arguments.add(name + ": " + value);
+        return this;
+    }
+
+    /**
+     * @param text
+     * @param literals - list to collect literal values of functions into, or null to write them into the text
+     */
+    void render(StringBuilder text, List<Object> literals) {
+        text.append(name);
+        if (root) {
+            if (function == null) {
+                throw new IllegalStateException("Root block " + name + " has no function");
+            }
+            text.append("(func: ");
+            function.render(text, literals);
+            for (String argument : arguments) {
+                text.append(", ").append(argument);
+            }
+            text.append(')');
+        } else if (!arguments.isEmpty()) {
+            text.append(" (").append(String.join(", ", arguments)).append(')');
+        }
+        if (filter != null) {
+            text.append(" @filter(");
+            filter.render(text, literals);
+            text.append(')');
+        }
+        if (selection.isEmpty()) {
+            return;
+        }
+        text.append(" {");
+        for (Object selected : selection) {
+            text.append(' ');
+            if (selected instanceof QueryBlock) {
+                ((QueryBlock) selected).render(text, literals);
+            } else {
+                text.append(selected);
+            }
+        }
+        text.append(" }");
+    }
+}
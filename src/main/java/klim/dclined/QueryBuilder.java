@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds queries out of blocks, functions and variables and compiles them into reusable {@link QueryTemplate}s.
+ * Values that change between requests should be passed as variables, so that every request of the same shape
+ * sends exactly the same text and only binds the variables. Example usage:
+ * <pre>
+ *     private static final QueryTemplate PEOPLE_BY_EMAIL = new QueryBuilder()
+ *             .variable("$email", "string")
+ *             .variable("$first", "int")
+ *             .block(block("people")
+ *                     .func(eq("person.email", var("$email")))
+ *                     .first(var("$first"))
+ *                     .select("uid", "person.email")
+ *                     .select(edge("friend").first(10).select("uid")))
+ *             .compile();
+ *     ...
+ *     client.query(PEOPLE_BY_EMAIL, variables, PeopleResponse.class);
+ * </pre>
+ * Compiling renders the whole query, so templates should be compiled once and kept, e.g. in constants.
+ * Queries built per request should use {@link #build} instead: literal values of functions are passed as generated
+ * variables, so that the template of every shape is compiled once and shared by all the queries of that shape.
+ * Pagination numbers and uids remain part of the shape.
+ *
+ * @author Michail Klimenkov
+ */
+public class QueryBuilder {
+
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+    // least recently used shapes are evicted first
+    private static final Map<String, Shape> TEMPLATES = Collections.synchronizedMap(
+            new LinkedHashMap<String, Shape>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Shape> eldest) {
+                    return size() > MAX_CACHED_TEMPLATES;
+                }
+            });
+
+    private final Map<String, String> variables = new LinkedHashMap<>();
+    private final List<QueryBlock> blocks = new ArrayList<>();
+
+    /**
+     * Declares query variable.
+     *
+     * @param name - name starting with $
+     * @param type - int, float, bool or string, optionally followed by = and the default value
+     * @return current instance
+     */
+    public QueryBuilder variable(String name, String type) {
+        if (!name.startsWith("$")) {
+            throw new IllegalArgumentException("Variable name must start with $: " + name);
+        }
+        variables.put(name, type);
+        return this;
+    }
+
+    public QueryBuilder block(QueryBlock block) {
+        blocks.add(block);
+        return this;
+    }
+
+    /**
+     * @return template of the query built so far
+     */
+    public QueryTemplate compile() {
+        StringBuilder text = new StringBuilder();
+        appendDeclarations(text, variables);
+        appendBlocks(text, null);
+        return new QueryTemplate(text.toString(), variables);
+    }
+
+    /**
+     * Builds the query passing literal values of functions as variables, using the cached template of its shape.
+     *
+     * @param values - values of the declared variables by name including the leading $
+     * @return query ready to be executed
+     */
+    public Query build(Map<String, String> values) {
+        List<Object> literals = new ArrayList<>();
+        StringBuilder key = new StringBuilder();
+        appendDeclarations(key, variables);
+        int declarations = key.length();
+        appendBlocks(key, literals);
+        String shapeKey = key.toString();
+        Shape shape = TEMPLATES.get(shapeKey);
+        if (shape == null) {
+            shape = new Shape(shapeKey.substring(declarations), variables);
+            TEMPLATES.put(shapeKey, shape);
+        }
+
+        Map<String, String> bound = new HashMap<>(values);
+        for (int i = 0; i < literals.size(); i++) {
+            bound.put(shape.literals[i], literals.get(i).toString());
+        }
+        return shape.template.bind(bound);
+    }
+
+    /**
+     * @return query without variables other than the literal values of its functions, see {@link #build(Map)}
+     */
+    public Query build() {
+        return build(Collections.emptyMap());
+    }
+
+    static int cachedTemplateCount() {
+        return TEMPLATES.size();
+    }
+
+    private static void appendDeclarations(StringBuilder text, Map<String, String> variables) {
+        if (variables.isEmpty()) {
+            return;
+        }
+        text.append("query q(");
+        boolean first = true;
+        for (Map.Entry<String, String> variable : variables.entrySet()) {
+            if (!first) {
+                text.append(", ");
+            }
+            text.append(variable.getKey()).append(": ").append(variable.getValue());
+            first = false;
+        }
+        text.append(") ");
+    }
+
+    private void appendBlocks(StringBuilder text, List<Object> literals) {
+        if (blocks.isEmpty()) {
+            throw new IllegalStateException("Query has no blocks");
+        }
+        text.append('{');
+        for (QueryBlock block : blocks) {
+            text.append(' ');
+            block.render(text, literals);
+        }
+        text.append(" }");
+    }
+
+    /**
+     * Template of one query shape with the names of the variables generated for its literal values.
+     */
+    private static class Shape {
+        private final QueryTemplate template;
+        private final String[] literals;
+
+        Shape(String blocks, Map<String, String> declared) {
+            Map<String, String> variables = new LinkedHashMap<>(declared);
+            List<String> names = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < blocks.length(); i++) {
+                char c = blocks.charAt(i);
+                if (!QueryFunction.isPlaceholder(c)) {
+                    text.append(c);
+                    continue;
+                }
+                String name = "$v" + names.size();
+                for (int n = names.size() + 1; variables.containsKey(name); n++) {
+                    name = "$v" + n;
+                }
+                variables.put(name, QueryFunction.typeOf(c));
+                names.add(name);
+                text.append(name);
+            }
+            StringBuilder query = new StringBuilder();
+            appendDeclarations(query, variables);
+            this.template = new QueryTemplate(query.append(text).toString(), variables);
+            this.literals = names.toArray(new String[0]);
+        }
+    }
+}
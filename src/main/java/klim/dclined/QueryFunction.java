@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Functions usable as root functions and filters of {@link QueryBlock}. Query variables are referred to
+ * with {@link #var}, strings are always quoted and escaped, numbers and booleans are used as they are.
+ * Example usage:
+ * <pre>
+ *     import static klim.dclined.QueryFunction.*;
+ *
+ *     and(anyOfTerms("person.username", var("$name")), not(has("person.deleted")))
+ * </pre>
+ *
+ * @author Michail Klimenkov
+ */
+public class QueryFunction {
+
+    private static final Pattern VARIABLE = Pattern.compile("\\$[A-Za-z_][A-Za-z0-9_]*");
+
+    // placeholders of literal values in the shape, by the type of the query variable they may be bound to
+    static final char STRING_VALUE = 1;
+    static final char INT_VALUE = 2;
+    static final char FLOAT_VALUE = 3;
+    static final char BOOL_VALUE = 4;
+
+    private final String shape;
+    private final List<Object> values;
+
+    private QueryFunction(String shape) {
+        this(shape, Collections.emptyList());
+    }
+
+    private QueryFunction(String shape, List<Object> values) {
+        this.shape = shape;
+        this.values = values;
+    }
+
+    /**
+     * @param name - name of a variable declared by the query, including the leading $
+     * @return reference to the variable usable in place of a value
+     */
+    public static Variable var(String name) {
+        if (!VARIABLE.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid variable name: " + name);
+        }
+        return new Variable(name);
+    }
+
+    public static QueryFunction eq(String predicate, Object value) {
+        return function("eq", predicate, value);
+    }
+
+    public static QueryFunction lt(String predicate, Object value) {
+        return function("lt", predicate, value);
+    }
+
+    public static QueryFunction le(String predicate, Object value) {
+        return function("le", predicate, value);
+    }
+
+    public static QueryFunction gt(String predicate, Object value) {
+        return function("gt", predicate, value);
+    }
+
+    public static QueryFunction ge(String predicate, Object value) {
+        return function("ge", predicate, value);
+    }
+
+    public static QueryFunction allOfTerms(String predicate, Object value) {
+        return function("allofterms", predicate, value);
+    }
+
+    public static QueryFunction anyOfTerms(String predicate, Object value) {
+        return function("anyofterms", predicate, value);
+    }
+
+    public static QueryFunction allOfText(String predicate, Object value) {
+        return function("alloftext", predicate, value);
+    }
+
+    public static QueryFunction anyOfText(String predicate, Object value) {
+        return function("anyoftext", predicate, value);
+    }
+
+    public static QueryFunction has(String predicate) {
+        return new QueryFunction("has(" + predicate + ")");
+    }
+
+    /**
+     * @param uids - numeric uids, uid strings such as "0x1f" or a single variable
+     * @return
+     */
+    public static QueryFunction uid(Object... uids) {
+        StringBuilder text = new StringBuilder("uid(");
+        for (int i = 0; i < uids.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            Object uid = uids[i];
+            if (uid instanceof Variable) {
+                text.append(uid);
+            } else if (uid instanceof Number) {
+                text.append(Uids.format(((Number) uid).longValue()));
+            } else {
+                // parsed and formatted again so that only a uid can get into the query
+                text.append(Uids.format(Uids.parse(uid.toString())));
+            }
+        }
+        return new QueryFunction(text.append(')').toString());
+    }
+
+    public static QueryFunction and(QueryFunction... functions) {
+        return join(" AND ", functions);
+    }
+
+    public static QueryFunction or(QueryFunction... functions) {
+        return join(" OR ", functions);
+    }
+
+    public static QueryFunction not(QueryFunction function) {
+        return new QueryFunction("NOT " + function.shape, function.values);
+    }
+
+    private static QueryFunction function(String name, String predicate, Object value) {
+        StringBuilder shape = new StringBuilder(name).append('(').append(predicate).append(", ");
+        if (value instanceof Variable) {
+            return new QueryFunction(shape.append(value).append(')').toString());
+        }
+        shape.append(placeholder(value)).append(')');
+        return new QueryFunction(shape.toString(), Collections.singletonList(value));
+    }
+
+    private static char placeholder(Object value) {
+        if (value instanceof Boolean) {
+            return BOOL_VALUE;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return INT_VALUE;
+        }
+        return value instanceof Number ? FLOAT_VALUE : STRING_VALUE;
+    }
+
+    static boolean isPlaceholder(char c) {
+        return c >= STRING_VALUE && c <= BOOL_VALUE;
+    }
+
+    static String typeOf(char placeholder) {
+        switch (placeholder) {
+            case BOOL_VALUE:
+                return "bool";
+            case INT_VALUE:
+                return "int";
+            case FLOAT_VALUE:
+                return "float";
+            default:
+                return "string";
+        }
+    }
+
+    /**
+     * Appends this function to a query.
+     *
+     * @param text
+     * @param literals - list to collect literal values into, leaving their placeholders in the text,
+     *                 or null to write the values into the text
+     */
+    void render(StringBuilder text, List<Object> literals) {
+        if (literals != null) {
+            literals.addAll(values);
+            text.append(shape);
+            return;
+        }
+        int next = 0;
+        for (int i = 0; i < shape.length(); i++) {
+            char c = shape.charAt(i);
+            if (isPlaceholder(c)) {
+                appendValue(text, values.get(next++));
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    private static QueryFunction join(String operator, QueryFunction... functions) {
+        if (functions.length == 0) {
+            throw new IllegalArgumentException("At least one function is required");
+        }
+        StringBuilder shape = new StringBuilder("(");
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < functions.length; i++) {
+            if (i > 0) {
+                shape.append(operator);
+            }
+            shape.append(functions[i].shape);
+            values.addAll(functions[i].values);
+        }
+        return new QueryFunction(shape.append(')').toString(), values);
+    }
+
+    static StringBuilder appendValue(StringBuilder text, Object value) {
+        if (value instanceof Number || value instanceof Boolean || value instanceof Variable) {
+            return text.append(value);
+        }
+        String string = value.toString();
+        text.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '\n':
+                    text.append("\\n");
+                    break;
+                case '\r':
+                    text.append("\\r");
+                    break;
+                case '\t':
+                    text.append("\\t");
+                    break;
+                case '"':
+                case '\\':
+                    text.append('\\').append(c);
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x7f) {
+                        text.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        text.append(c);
+                    }
+            }
+        }
+        return text.append('"');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        render(text, null);
+        return text.toString();
+    }
+
+    /**
+     * Reference to a query variable, see {@link #var}.
+     */
+    public static final class Variable {
+        private final String name;
+
+        private Variable(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphProto;
+import io.dgraph.DgraphProto.Mutation;
+import io.dgraph.DgraphProto.NQuad;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Raw responses of the queries of one transaction by query text and variables. As all the queries of
+ * a transaction read at the same start timestamp, a response can only go stale when the transaction itself
+ * writes to a predicate the query reads. The predicates a query reads are approximated by all the identifiers
+ * in its text, IRIs in angle brackets included, so that an entry may be invalidated needlessly but never kept
+ * when it should not be.
+ * Queries using expand() and deletes of all the predicates of a node invalidate everything.
+ *
+ * @author Michail Klimenkov
+ */
+class QueryMemo {
+
+    static final long MAX_BYTES = 16 << 20;
+    private static final String STAR = "_STAR_ALL";
+
+    private final Map<Query, Entry> entries = new ConcurrentHashMap<>();
+    private long version;
+    private long bytes;
+
+    static Query key(String query, Map<String, String> variables) {
+        return variables.isEmpty() ? new Query(query) : new Query(query, new HashMap<>(variables));
+    }
+
+    DgraphProto.Response get(Query key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.response;
+    }
+
+    /**
+     * @return version to be passed to {@link #put} by queries sent now
+     */
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Makes responses of the queries sent before now ineligible for memoization, called before every mutation.
+     */
+    synchronized void mutating() {
+        version++;
+    }
+
+    synchronized void put(Query key, DgraphProto.Response response, long sentVersion) {
+        if (sentVersion != version || bytes + response.getSerializedSize() > MAX_BYTES) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(response, predicates(key.getQuery())));
+        bytes += response.getSerializedSize() - (previous == null ? 0 : previous.response.getSerializedSize());
+    }
+
+    /**
+     * Drops the responses of the queries reading any of the predicates modified by a mutation.
+     *
+     * @param preds - predicates reported by the server, optionally prefixed with their group as in 1-person.email
+     */
+    synchronized void invalidate(Collection<String> preds) {
+        if (preds.isEmpty() || entries.isEmpty()) {
+            return;
+        }
+        Set<String> modified = new HashSet<>();
+        for (String pred : preds) {
+            modified.add(stripGroup(pred));
+        }
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.predicates == null || !disjoint(entry.predicates, modified)) {
+                bytes -= entry.response.getSerializedSize();
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return true if the mutation may delete predicates it does not name
+     */
+    static boolean deletesAll(Mutation mutation) {
+        if (!mutation.getDeleteJson().isEmpty()) {
+            return true;
+        }
+        for (NQuad nQuad : mutation.getDelList()) {
+            if (STAR.equals(nQuad.getPredicate()) || "*".equals(nQuad.getPredicate())) {
+                return true;
+            }
+        }
+        return mutation.getDelNquads().toStringUtf8().indexOf('*') >= 0;
+    }
+
+    /**
+     * @return identifiers of the query with reverse edge markers and angle brackets removed,
+     * or null if the query reads all predicates
+     */
+    static Set<String> predicates(String query) {
+        Set<String> identifiers = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-' || (c == '~' && start < 0)) {
+                if (start < 0) {
+                    start = i;
+                }
+                continue;
+            }
+            if (c == '<' && (start < 0 || i == start + 1 && query.charAt(start) == '~')) {
+                // IRI such as <schema:name> or ~<http://x/y> is one predicate whatever it contains
+                int end = query.indexOf('>', i + 1);
+                if (end < 0) {
+                    return null;
+                }
+                identifiers.add(query.substring(i + 1, end));
+                start = -1;
+                i = end;
+                continue;
+            }
+            if (start >= 0) {
+                String identifier = query.substring(query.charAt(start) == '~' ? start + 1 : start, i);
+                if ("expand".equals(identifier)) {
+                    return null;
+                }
+                identifiers.add(identifier);
+                start = -1;
+            }
+        }
+        return identifiers;
+    }
+
+    private static String stripGroup(String pred) {
+        int dash = pred.indexOf('-');
+        for (int i = 0; i < dash; i++) {
+            if (!Character.isDigit(pred.charAt(i))) {
+                return pred;
+            }
+        }
+        return dash > 0 ? pred.substring(dash + 1) : pred;
+    }
+
+    private static boolean disjoint(Set<String> read, Set<String> modified) {
+        for (String pred : modified) {
+            if (read.contains(pred)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Entry {
+        private final DgraphProto.Response response;
+        private final Set<String> predicates;
+
+        Entry(DgraphProto.Response response, Set<String> predicates) {
+            this.response = response;
+            this.predicates = predicates;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable compiled query produced by {@link QueryBuilder}, safe to share between threads.
+ *
+ * @author Michail Klimenkov
+ */
+public class QueryTemplate {
+
+    private final String query;
+    private final Set<String> variables;
+    private final Set<String> required = new LinkedHashSet<>();
+
+    /**
+     * @param query
+     * @param variables - types by variable name, types of optional variables include their defaults
+     */
+    QueryTemplate(String query, Map<String, String> variables) {
+        this.query = query;
+        this.variables = Collections.unmodifiableSet(new LinkedHashSet<>(variables.keySet()));
+        for (Map.Entry<String, String> variable : variables.entrySet()) {
+            if (variable.getValue().indexOf('=') < 0) {
+                required.add(variable.getKey());
+            }
+        }
+    }
+
+    /**
+     * Binds the variables of this template.
+     *
+     * @param values - values by variable name including the leading $; variables with defaults may be omitted
+     * @return query ready to be executed
+     */
+    public Query bind(Map<String, String> values) {
+        for (String name : values.keySet()) {
+            if (!variables.contains(name)) {
+                throw new IllegalArgumentException("Variable " + name + " is not declared by query " + query);
+            }
+        }
+        for (String name : required) {
+            if (!values.containsKey(name)) {
+                throw new IllegalArgumentException("Variable " + name + " has no default and must be bound for query " + query);
+            }
+        }
+        return new Query(query, values);
+    }
+
+    /**
+     * Binds the variables of this template.
+     *
+     * @param namesAndValues - variable name followed by its value, repeated
+     * @return query ready to be executed
+     */
+    public Query bind(Object... namesAndValues) {
+        if (namesAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Names and values must come in pairs");
+        }
+        Map<String, String> values = new HashMap<>(namesAndValues.length);
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put(namesAndValues[i].toString(), String.valueOf(namesAndValues[i + 1]));
+        }
+        return bind(values);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public Set<String> getVariables() {
+        return variables;
+    }
+
+    @Override
+    public String toString() {
+        return query;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+/**
+ * Instances of this exception are thrown when the response of a query exceeds its response size budget.
+ *
+ * @author Michail Klimenkov
+ */
+public class ResponseTooLargeException extends RuntimeException {
+
+    private final int maxResponseBytes;
+
+    public ResponseTooLargeException(String query, long responseBytes, int maxResponseBytes) {
+        super((responseBytes < 0 ? "Response" : "Response of " + responseBytes + " bytes")
+                + " exceeds the budget of " + maxResponseBytes + " bytes, query: " + query);
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    public int getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Columns of a {@link ResultTable}: the predicates of the nodes of a query block decoded into primitive arrays.
+ * Example usage:
+ * <pre>
+ *     ResultColumns columns = new ResultColumns()
+ *             .uids("uid")
+ *             .doubles("score")
+ *             .longs("ts")
+ *             .strings("category");
+ *
+ *     client.queryTable("{ q(func: has(score)) { uid score ts category } }", emptyMap(), columns)
+ *             .thenAccept((ResultTable table) -&gt; ...);
+ * </pre>
+ * The rows are the nodes of the first block of the response, unless another block is chosen. Other predicates
+ * and nested values are skipped.
+ *
+ * @author Michail Klimenkov
+ */
+public class ResultColumns {
+
+    enum Type {
+        UID, LONG, DOUBLE, STRING
+    }
+
+    private final Map<String, Type> columns = new LinkedHashMap<>();
+    private String block;
+
+    /**
+     * Column of uids, parsed to long.
+     */
+    public ResultColumns uids(String predicate) {
+        return column(predicate, Type.UID);
+    }
+
+    /**
+     * Column of integral numbers; booleans are decoded as 0 and 1.
+     */
+    public ResultColumns longs(String predicate) {
+        return column(predicate, Type.LONG);
+    }
+
+    /**
+     * Column of floating point numbers, NaN where a node has no value.
+     */
+    public ResultColumns doubles(String predicate) {
+        return column(predicate, Type.DOUBLE);
+    }
+
+    /**
+     * Dictionary encoded column of strings, suited to predicates with few distinct values.
+     */
+    public ResultColumns strings(String predicate) {
+        return column(predicate, Type.STRING);
+    }
+
+    /**
+     * Name of the block whose nodes are the rows, defaults to the first block of the response.
+     */
+    public ResultColumns block(String block) {
+        this.block = block;
+        return this;
+    }
+
+    private ResultColumns column(String predicate, Type type) {
+        if (columns.putIfAbsent(predicate, type) != null) {
+            throw new IllegalArgumentException("Column " + predicate + " is already declared");
+        }
+        return this;
+    }
+
+    Map<String, Type> getColumns() {
+        return Collections.unmodifiableMap(columns);
+    }
+
+    String getBlock() {
+        return block;
+    }
+}
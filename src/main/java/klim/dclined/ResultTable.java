@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Query result decoded into one primitive array per column, see {@link ResultColumns}. Rows are indexed
+ * from 0 to {@link #getRowCount()} - 1 in the order of the response.
+ *
+ * @author Michail Klimenkov
+ */
+public class ResultTable {
+
+    private final int rowCount;
+    private final Map<String, long[]> longs;
+    private final Map<String, double[]> doubles;
+    private final Map<String, int[]> codes;
+    private final Map<String, String[]> dictionaries;
+    private final Map<String, BitSet> present;
+
+    ResultTable(int rowCount, Map<String, long[]> longs, Map<String, double[]> doubles, Map<String, int[]> codes,
+                Map<String, String[]> dictionaries, Map<String, BitSet> present) {
+        this.rowCount = rowCount;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.codes = codes;
+        this.dictionaries = dictionaries;
+        this.present = present;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param predicate - uid or long column
+     * @return values by row, 0 where a node has no value
+     */
+    public long[] getLongs(String predicate) {
+        return column(longs, predicate);
+    }
+
+    /**
+     * @param predicate - double column
+     * @return values by row, NaN where a node has no value
+     */
+    public double[] getDoubles(String predicate) {
+        return column(doubles, predicate);
+    }
+
+    /**
+     * @param predicate - string column
+     * @return indexes into the dictionary by row, -1 where a node has no value
+     */
+    public int[] getCodes(String predicate) {
+        return column(codes, predicate);
+    }
+
+    /**
+     * @param predicate - string column
+     * @return distinct values of the column in the order of their first occurrence
+     */
+    public String[] getDictionary(String predicate) {
+        return column(dictionaries, predicate);
+    }
+
+    /**
+     * @param predicate - string column
+     * @param row
+     * @return value of the row or null
+     */
+    public String getString(String predicate, int row) {
+        int code = getCodes(predicate)[row];
+        return code < 0 ? null : getDictionary(predicate)[code];
+    }
+
+    /**
+     * @param predicate - any column
+     * @param row
+     * @return true if the node of the row has value of the predicate
+     */
+    public boolean hasValue(String predicate, int row) {
+        return column(present, predicate).get(row);
+    }
+
+    private static <T> T column(Map<String, T> columns, String predicate) {
+        T column = columns.get(predicate);
+        if (column == null) {
+            throw new IllegalArgumentException("No column " + predicate + " of this type");
+        }
+        return column;
+    }
+}
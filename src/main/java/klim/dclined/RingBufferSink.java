@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sink that keeps the most recent slow operations in memory, overwriting the oldest ones.
+ *
+ * @author Michail Klimenkov
+ */
+public class RingBufferSink implements SlowOperationSink {
+
+    private final AtomicReferenceArray<SlowOperation> buffer;
+    private final AtomicLong written = new AtomicLong();
+
+    public RingBufferSink(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.buffer = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public void accept(SlowOperation operation) {
+        long position = written.getAndIncrement();
+        buffer.set((int) (position % buffer.length()), operation);
+    }
+
+    /**
+     * @return retained operations, oldest first
+     */
+    public List<SlowOperation> getOperations() {
+        long end = written.get();
+        long start = Math.max(0, end - buffer.length());
+
+        List<SlowOperation> operations = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            SlowOperation operation = buffer.get((int) (i % buffer.length()));
+            if (operation != null) {
+                operations.add(operation);
+            }
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphProto;
+import io.dgraph.DgraphProto.Operation;
+import io.dgraph.DgraphProto.SchemaNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Collections.emptyMap;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Keeps track of the schema known to the server and alters only the predicates whose definition
+ * actually changed. Altering a predicate may cause the server to rebuild its indexes, which stalls
+ * writes, so applying the same schema on every service start should be a no-op. Example usage:
+ * <pre>
+ *     client.getSchemaManager()
+ *             .apply("person.email: string @index(hash) @upsert .")
+ *             .thenAccept((Set&lt;String&gt; altered) -&gt; ...);
+ * </pre>
+ * The cached schema is discarded whenever the schema is changed through the client by other means.
+ *
+ * @author Michail Klimenkov
+ */
+public class SchemaManager {
+
+    private final DClined client;
+    private volatile CompletableFuture<Map<String, SchemaNode>> schema;
+
+    SchemaManager(DClined client) {
+        this.client = client;
+    }
+
+    /**
+     * Fetches the current schema from the server, bypassing the cache.
+     *
+     * @return
+     */
+    public CompletableFuture<List<SchemaNode>> fetch() {
+        return client.execute("schema {}", emptyMap(), DgraphProto.Response::getSchemaList);
+    }
+
+    /**
+     * Retrieves the schema indexed by predicate name. The schema is fetched from the server
+     * on first use and cached afterwards.
+     *
+     * @return
+     */
+    public CompletableFuture<Map<String, SchemaNode>> getSchema() {
+        CompletableFuture<Map<String, SchemaNode>> current = this.schema;
+        if (current == null || current.isCompletedExceptionally()) {
+            synchronized (this) {
+                current = this.schema;
+                if (current == null || current.isCompletedExceptionally()) {
+                    current = fetch().thenApply(SchemaManager::index);
+                    this.schema = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Creates builder of nquads typed according to the cached schema. Since the schema is cached,
+     * this only hits the server on first use and after the schema has been changed through the client.
+     *
+     * @return
+     */
+    public CompletableFuture<TypedNQuads> typedNQuads() {
+        return getSchema().thenApply(TypedNQuads::new);
+    }
+
+    /**
+     * Alters the predicates of the supplied schema whose definition differs from the current one.
+     *
+     * @param schema
+     * @return names of the altered predicates
+     */
+    public CompletableFuture<Set<String>> apply(String schema) {
+        List<SchemaNode> desired = SchemaParser.parse(schema);
+
+        return getSchema().thenCompose((Map<String, SchemaNode> current) -> {
+            List<SchemaNode> changed = diff(current, desired);
+            if (changed.isEmpty()) {
+                return CompletableFuture.completedFuture(Collections.<String>emptySet());
+            }
+
+            Operation operation = Operation.newBuilder()
+                    .setSchema(changed.stream().map(SchemaParser::render).collect(joining("\n")))
+                    .build();
+
+            return client.alter(operation).thenApply((v) -> {
+                Set<String> altered = new LinkedHashSet<>();
+                for (SchemaNode node : changed) {
+                    current.put(node.getPredicate(), node);
+                    altered.add(node.getPredicate());
+                }
+                AbstractClient.LOG.info("Altered schema of predicates {}", altered);
+                return altered;
+            });
+        });
+    }
+
+    /**
+     * Discards the cached schema so that it is fetched again on next use.
+     */
+    public void invalidate() {
+        this.schema = null;
+    }
+
+    private static Map<String, SchemaNode> index(List<SchemaNode> nodes) {
+        Map<String, SchemaNode> index = new ConcurrentHashMap<>();
+        for (SchemaNode node : nodes) {
+            index.put(node.getPredicate(), node);
+        }
+        return index;
+    }
+
+    /**
+     * Selects the desired nodes whose definition differs from the current one.
+     *
+     * @param current
+     * @param desired
+     * @return
+     */
+    static List<SchemaNode> diff(Map<String, SchemaNode> current, List<SchemaNode> desired) {
+        List<SchemaNode> changed = new ArrayList<>();
+        for (SchemaNode node : desired) {
+            SchemaNode existing = current.get(node.getPredicate());
+            if (existing == null || !sameDefinition(existing, node)) {
+                changed.add(node);
+            }
+        }
+        return changed;
+    }
+
+    static boolean sameDefinition(SchemaNode a, SchemaNode b) {
+        return a.getType().equalsIgnoreCase(b.getType())
+                && (a.getIndex() || a.getTokenizerCount() > 0) == (b.getIndex() || b.getTokenizerCount() > 0)
+                && new LinkedHashSet<>(a.getTokenizerList()).equals(new LinkedHashSet<>(b.getTokenizerList()))
+                && a.getReverse() == b.getReverse()
+                && a.getCount() == b.getCount()
+                && a.getList() == b.getList()
+                && a.getUpsert() == b.getUpsert()
+                && a.getLang() == b.getLang();
+    }
+}
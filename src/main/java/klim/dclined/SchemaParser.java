@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphProto.SchemaNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parses schema definitions such as
+ * <pre>
+ *     person.email: string @index(hash, term) @upsert .
+ *     person.friend: [uid] @reverse @count .
+ * </pre>
+ * into schema nodes and renders schema nodes back to text.
+ *
+ * @author Michail Klimenkov
+ */
+class SchemaParser {
+
+    private final String text;
+    private int position;
+
+    private SchemaParser(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses the supplied schema text.
+     *
+     * @param schema
+     * @return
+     * @throws IllegalArgumentException if the schema is malformed
+     */
+    static List<SchemaNode> parse(String schema) {
+        return new SchemaParser(schema).parseAll();
+    }
+
+    /**
+     * Renders the supplied node in the schema syntax accepted by alter operation.
+     *
+     * @param node
+     * @return
+     */
+    static String render(SchemaNode node) {
+        StringBuilder builder = new StringBuilder();
+        builder.append('<').append(node.getPredicate()).append(">: ");
+        if (node.getList()) {
+            builder.append('[').append(node.getType()).append(']');
+        } else {
+            builder.append(node.getType());
+        }
+        if (node.getTokenizerCount() > 0) {
+            builder.append(" @index(").append(String.join(", ", node.getTokenizerList())).append(')');
+        }
+        if (node.getReverse()) {
+            builder.append(" @reverse");
+        }
+        if (node.getCount()) {
+            builder.append(" @count");
+        }
+        if (node.getUpsert()) {
+            builder.append(" @upsert");
+        }
+        if (node.getLang()) {
+            builder.append(" @lang");
+        }
+        return builder.append(" .").toString();
+    }
+
+    private List<SchemaNode> parseAll() {
+        List<SchemaNode> nodes = new ArrayList<>();
+        skipWhitespace();
+        while (position < text.length()) {
+            nodes.add(parseNode());
+            skipWhitespace();
+        }
+        return nodes;
+    }
+
+    private SchemaNode parseNode() {
+        SchemaNode.Builder node = SchemaNode.newBuilder();
+
+        String predicate;
+        if (peek() == '<') {
+            position++;
+            predicate = readUntil('>');
+            position++;
+        } else {
+            predicate = readUntil(':').trim();
+        }
+        node.setPredicate(predicate);
+
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+
+        if (peek() == '[') {
+            position++;
+            skipWhitespace();
+            node.setType(readWord().toLowerCase(Locale.ROOT));
+            skipWhitespace();
+            expect(']');
+            node.setList(true);
+        } else {
+            node.setType(readWord().toLowerCase(Locale.ROOT));
+        }
+
+        skipWhitespace();
+        while (peek() == '@') {
+            position++;
+            String directive = readWord();
+            switch (directive) {
+                case "index":
+                    node.setIndex(true);
+                    skipWhitespace();
+                    expect('(');
+                    for (String tokenizer : readUntil(')').split(",")) {
+                        if (!tokenizer.trim().isEmpty()) {
+                            node.addTokenizer(tokenizer.trim());
+                        }
+                    }
+                    expect(')');
+                    break;
+                case "reverse":
+                    node.setReverse(true);
+                    break;
+                case "count":
+                    node.setCount(true);
+                    break;
+                case "upsert":
+                    node.setUpsert(true);
+                    break;
+                case "lang":
+                    node.setLang(true);
+                    break;
+                default:
+                    throw error("unknown directive @" + directive);
+            }
+            skipWhitespace();
+        }
+        expect('.');
+        return node.build();
+    }
+
+    private char peek() {
+        if (position >= text.length()) {
+            throw error("unexpected end of schema");
+        }
+        return text.charAt(position);
+    }
+
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw error("expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    private String readUntil(char terminator) {
+        int end = text.indexOf(terminator, position);
+        if (end < 0) {
+            throw error("expected '" + terminator + "'");
+        }
+        String value = text.substring(position, end);
+        position = end;
+        return value;
+    }
+
+    private String readWord() {
+        int start = position;
+        while (position < text.length() && Character.isLetterOrDigit(text.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw error("expected a word");
+        }
+        return text.substring(start, position);
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '#') {
+                while (position < text.length() && text.charAt(position) != '\n') {
+                    position++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                position++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("Malformed schema at position %d: %s", position, message));
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphProto;
+
+import java.io.Closeable;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * Client of several independent DGraph clusters, each holding a part of the data. Operations are routed to
+ * a cluster by partition key (e.g. tenant id) using consistent hashing, so adding a cluster moves only
+ * a proportional share of the keys. Example usage:
+ * <pre>
+ *     Map&lt;String, DClined&gt; shards = new LinkedHashMap&lt;&gt;();
+ *     shards.put("eu-1", new DClined(euChannel));
+ *     shards.put("us-1", new DClined(usChannel));
+ *     ShardedDClined client = new ShardedDClined(shards);
+ *
+ *     client.set(tenantId, nQuad("_:person", "person.email", "starmaker@mail.com"));
+ *     client.queryAll("{ people(func: has(person.email)) { uid person.email } }", PeopleResponse.class);
+ * </pre>
+ * Shard names, rather than their order, decide the placement of keys, so they should stay stable.
+ *
+ * @author Michail Klimenkov
+ */
+public class ShardedDClined implements Closeable {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final Map<String, DClined> shards;
+    private final TreeMap<Long, DClined> ring = new TreeMap<>();
+
+    public ShardedDClined(Map<String, DClined> shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param shards       - clients by shard name
+     * @param virtualNodes - number of points per shard on the hash ring, more points spread keys more evenly
+     */
+    public ShardedDClined(Map<String, DClined> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        this.shards = Collections.unmodifiableMap(new LinkedHashMap<>(shards));
+        for (Map.Entry<String, DClined> shard : shards.entrySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(shard.getKey() + "#" + i), shard.getValue());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the client of the shard owning the given key.
+     *
+     * @param key
+     * @return
+     */
+    public DClined shard(String key) {
+        Map.Entry<Long, DClined> owner = ring.ceilingEntry(hash(key));
+        return owner == null ? ring.firstEntry().getValue() : owner.getValue();
+    }
+
+    public Map<String, DClined> getShards() {
+        return shards;
+    }
+
+    public Transaction newTransaction(String key) {
+        return shard(key).newTransaction();
+    }
+
+    public <T> CompletableFuture<T> query(String key, String query, Map<String, String> variables, TypeToken<T> type) {
+        return shard(key).query(query, variables, type);
+    }
+
+    public <T> CompletableFuture<T> query(String key, String query, TypeToken<T> type) {
+        return shard(key).query(query, type);
+    }
+
+    public <T> CompletableFuture<T> query(String key, String query, Class<T> type) {
+        return shard(key).query(query, type);
+    }
+
+    public CompletableFuture<Map<String, String>> set(String key, String nQuads) {
+        return shard(key).set(nQuads);
+    }
+
+    public CompletableFuture<Map<String, String>> set(String key, NQuads nQuads) {
+        return shard(key).set(nQuads);
+    }
+
+    public CompletableFuture<Map<String, String>> setObject(String key, Object object) {
+        return shard(key).setObject(object);
+    }
+
+    public CompletableFuture<Map<String, String>> del(String key, String nQuads) {
+        return shard(key).del(nQuads);
+    }
+
+    public CompletableFuture<Map<String, String>> del(String key, NQuads nQuads) {
+        return shard(key).del(nQuads);
+    }
+
+    /**
+     * Runs the query on all the shards in parallel and merges the results: top level arrays are concatenated
+     * in the order of the shards, other top level values are taken from the first shard returning them.
+     * Ordering and pagination apply to each shard separately.
+     *
+     * @param query
+     * @param variables
+     * @param type
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> queryAll(String query, Map<String, String> variables, TypeToken<T> type) {
+        List<CompletableFuture<JsonObject>> results = new ArrayList<>(shards.size());
+        for (DClined shard : shards.values()) {
+            results.add(shard.execute(query, variables, ShardedDClined::parse));
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply((v) -> {
+                    JsonObject merged = new JsonObject();
+                    for (CompletableFuture<JsonObject> result : results) {
+                        merge(merged, result.join());
+                    }
+                    return AbstractClient.PARSER.fromJson(merged, type.getType());
+                });
+    }
+
+    public <T> CompletableFuture<T> queryAll(String query, TypeToken<T> type) {
+        return queryAll(query, emptyMap(), type);
+    }
+
+    public <T> CompletableFuture<T> queryAll(String query, Class<T> type) {
+        return queryAll(query, emptyMap(), TypeToken.get(type));
+    }
+
+    static void merge(JsonObject merged, JsonObject result) {
+        for (Map.Entry<String, JsonElement> entry : result.entrySet()) {
+            JsonElement existing = merged.get(entry.getKey());
+            if (existing == null) {
+                JsonElement value = entry.getValue();
+                merged.add(entry.getKey(), value.isJsonArray() ? copy(value.getAsJsonArray()) : value);
+            } else if (existing.isJsonArray() && entry.getValue().isJsonArray()) {
+                existing.getAsJsonArray().addAll(entry.getValue().getAsJsonArray());
+            }
+        }
+    }
+
+    private static JsonArray copy(JsonArray array) {
+        JsonArray copy = new JsonArray();
+        copy.addAll(array);
+        return copy;
+    }
+
+    private static JsonObject parse(DgraphProto.Response response) {
+        ByteString json = response.getJson();
+        if (json.isEmpty()) {
+            return new JsonObject();
+        }
+        JsonElement element = new JsonParser().parse(new InputStreamReader(json.newInput(), StandardCharsets.UTF_8));
+        return element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+    }
+
+    /**
+     * 64 bit FNV-1a followed by the MurmurHash3 finalizer to spread similar keys over the ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Closes the clients of all the shards.
+     */
+    @Override
+    public void close() {
+        for (DClined shard : shards.values()) {
+            shard.close();
+        }
+    }
+}
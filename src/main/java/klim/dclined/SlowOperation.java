@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.Map;
+
+/**
+ * Instances of this class represent traces of operations that took longer than the configured threshold.
+ * All durations are in nanoseconds.
+ *
+ * @author Michail Klimenkov
+ */
+public class SlowOperation {
+    private final long timestamp;
+    private final OperationType type;
+    private final String query;
+    private final Map<String, String> variables;
+    private final long startTs;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final long queueNanos;
+    private final long roundTripNanos;
+    private final long decodeNanos;
+    private final long serverParsingNanos;
+    private final long serverProcessingNanos;
+    private final long serverEncodingNanos;
+
+    SlowOperation(long timestamp, OperationType type, String query, Map<String, String> variables, long startTs,
+                  long requestBytes, long responseBytes, long queueNanos, long roundTripNanos, long decodeNanos,
+                  long serverParsingNanos, long serverProcessingNanos, long serverEncodingNanos) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.query = query;
+        this.variables = variables;
+        this.startTs = startTs;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.queueNanos = queueNanos;
+        this.roundTripNanos = roundTripNanos;
+        this.decodeNanos = decodeNanos;
+        this.serverParsingNanos = serverParsingNanos;
+        this.serverProcessingNanos = serverProcessingNanos;
+        this.serverEncodingNanos = serverEncodingNanos;
+    }
+
+    /**
+     * @return wall clock time in milliseconds when the operation completed
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    /**
+     * @return query text or null for mutations
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return variable names of the query, values are redacted
+     */
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+
+    public long getStartTs() {
+        return startTs;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return time from the operation being requested till the request being handed over to GRPC
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    public long getServerParsingNanos() {
+        return serverParsingNanos;
+    }
+
+    public long getServerProcessingNanos() {
+        return serverProcessingNanos;
+    }
+
+    public long getServerEncodingNanos() {
+        return serverEncodingNanos;
+    }
+
+    public long getTotalNanos() {
+        return queueNanos + roundTripNanos + decodeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s took %dus (queue=%dus, roundTrip=%dus, decode=%dus, server parsing=%dus, processing=%dus, encoding=%dus) " +
+                        "startTs=%d, request=%dB, response=%dB, query=%s, variables=%s",
+                type, getTotalNanos() / 1000, queueNanos / 1000, roundTripNanos / 1000, decodeNanos / 1000,
+                serverParsingNanos / 1000, serverProcessingNanos / 1000, serverEncodingNanos / 1000,
+                startTs, requestBytes, responseBytes, query, variables);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphProto.Latency;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures traces of the operations that take longer than the configured threshold. Timestamps
+ * of every operation are always taken, but the trace itself is only built for a sampled share
+ * of the slow operations, so the log stays cheap even when the database struggles. Example usage:
+ * <pre>
+ *     RingBufferSink sink = new RingBufferSink(100);
+ *     client.setSlowOperationLog(new SlowOperationLog(200, TimeUnit.MILLISECONDS, 0.1, sink));
+ * </pre>
+ * Values of query variables are redacted; values inlined into the query text are not.
+ *
+ * @author Michail Klimenkov
+ */
+public class SlowOperationLog {
+
+    static final String REDACTED = "<redacted>";
+
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final SlowOperationSink sink;
+
+    /**
+     * Creates log capturing all the operations slower than the threshold.
+     *
+     * @param threshold
+     * @param unit
+     * @param sink
+     */
+    public SlowOperationLog(long threshold, TimeUnit unit, SlowOperationSink sink) {
+        this(threshold, unit, 1, sink);
+    }
+
+    /**
+     * @param threshold
+     * @param unit
+     * @param sampleRate - share of slow operations to be captured, in range 0..1
+     * @param sink
+     */
+    public SlowOperationLog(long threshold, TimeUnit unit, double sampleRate, SlowOperationSink sink) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be in range 0..1");
+        }
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.sampleRate = sampleRate;
+        this.sink = sink;
+    }
+
+    /**
+     * Tells whether an operation of the given duration should be captured.
+     *
+     * @param totalNanos
+     * @return
+     */
+    boolean shouldCapture(long totalNanos) {
+        if (totalNanos < thresholdNanos) {
+            return false;
+        }
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    void capture(OperationType type, String query, Map<String, String> variables, long startTs,
+                 long requestBytes, long responseBytes, Latency latency,
+                 long queueNanos, long roundTripNanos, long decodeNanos) {
+        SlowOperation operation = new SlowOperation(System.currentTimeMillis(), type, query, redact(variables), startTs,
+                requestBytes, responseBytes, queueNanos, roundTripNanos, decodeNanos,
+                latency.getParsingNs(), latency.getProcessingNs(), latency.getEncodingNs());
+        try {
+            sink.accept(operation);
+        } catch (RuntimeException e) {
+            AbstractClient.LOG.warn("Slow operation sink failed", e);
+        }
+    }
+
+    static Map<String, String> redact(Map<String, String> variables) {
+        if (variables == null || variables.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> redacted = new LinkedHashMap<>();
+        for (String name : variables.keySet()) {
+            redacted.put(name, REDACTED);
+        }
+        return redacted;
+    }
+}
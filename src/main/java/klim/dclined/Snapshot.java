@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphGrpc.DgraphStub;
+import io.dgraph.DgraphProto;
+import io.dgraph.DgraphProto.Mutation;
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.TxnContext;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static java.util.Collections.emptySet;
+
+/**
+ * Read-only client whose queries all read at the same start timestamp, used by the operations spanning
+ * several queries such as traversals, purges and paged queries. Unlike a {@link Transaction} it holds nothing
+ * on the server, so it is neither tracked nor memoized and needs no commit or abort; it is simply dropped.
+ *
+ * @author Michail Klimenkov
+ */
+class Snapshot extends AbstractClient {
+
+    private final DClined client;
+    private final DgraphStub stub;
+    private final Priority priority;
+    private final AtomicReference<TransactionState> state = new AtomicReference<>(new TransactionState());
+    private final StartTsPipeline pipeline = new StartTsPipeline(() -> this.state.get().getStartTs());
+
+    Snapshot(DClined client, DgraphStub stub, Priority priority) {
+        this.client = client;
+        this.stub = stub;
+        this.priority = priority;
+    }
+
+    @Override
+    <T> CompletableFuture<T> execute(String query, Map<String, String> variables, int maxResponseBytes,
+                                     Function<DgraphProto.Response, T> decoder) {
+        return pipeline.dispatch(() -> super.execute(query, variables, maxResponseBytes, decoder));
+    }
+
+    @Override
+    protected CompletableFuture<Map<String, String>> mutate(Mutation mutation) {
+        CompletableFuture<Map<String, String>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new UnsupportedOperationException("Snapshot is read-only"));
+        return failed;
+    }
+
+    @Override
+    protected TransactionState getState() {
+        return state.get();
+    }
+
+    @Override
+    protected DgraphStub getStub(OperationType type) {
+        return stub;
+    }
+
+    @Override
+    protected AbstractClient snapshot() {
+        return this;
+    }
+
+    @Override
+    protected MetricsListener getMetrics() {
+        return client.getMetrics();
+    }
+
+    @Override
+    protected SlowOperationLog getSlowOperationLog() {
+        return client.getSlowOperationLog();
+    }
+
+    @Override
+    protected Compression getCompression() {
+        return client.getCompression();
+    }
+
+    @Override
+    protected LinReadWatermarks getLinReadWatermarks() {
+        return client.getLinReadWatermarks();
+    }
+
+    @Override
+    protected int getMaxResponseBytes() {
+        return client.getMaxResponseBytes();
+    }
+
+    @Override
+    protected Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    protected PriorityDispatcher getDispatcher() {
+        return client.getDispatcher();
+    }
+
+    @Override
+    protected void mergeContext(TxnContext context) {
+        // only the start timestamp matters, reads report no conflict keys
+        TransactionState current = state.get();
+        if (current.getStartTs() == 0) {
+            state.compareAndSet(current, new TransactionState(context.getStartTs(), emptySet(), emptySet()));
+        }
+    }
+
+    @Override
+    protected Mutation newMutation(BiConsumer<Mutation.Builder, NQuad> aggregator, NQuad... nQuads) {
+        throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+
+    @Override
+    protected Mutation newPayloadMutation(BiConsumer<Mutation.Builder, ByteString> payloadSetter, ByteString payload) {
+        throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+}
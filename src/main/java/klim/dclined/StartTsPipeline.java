@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Orders the operations of a transaction or snapshot around its start timestamp. Until the timestamp is known
+ * the first operation is sent alone to obtain it while the others are parked; if it fails without fixing
+ * the timestamp one of the parked operations takes its place. Afterwards operations are sent without waiting
+ * for each other.
+ *
+ * @author Michail Klimenkov
+ */
+class StartTsPipeline {
+
+    private final LongSupplier startTs;
+    private final AtomicReference<CompletableFuture<Void>> leading = new AtomicReference<>();
+
+    /**
+     * @param startTs - current start timestamp, 0 while unknown
+     */
+    StartTsPipeline(LongSupplier startTs) {
+        this.startTs = startTs;
+    }
+
+    /**
+     * Dispatches the operation once the start timestamp is known.
+     *
+     * @param operation
+     * @param <T>
+     * @return
+     */
+    <T> CompletableFuture<T> dispatch(Supplier<CompletableFuture<T>> operation) {
+        while (true) {
+            if (startTs.getAsLong() != 0) {
+                return operation.get();
+            }
+
+            CompletableFuture<Void> current = leading.get();
+            if (current != null) {
+                return current.thenCompose((v) -> dispatch(operation));
+            }
+
+            CompletableFuture<Void> gate = new CompletableFuture<>();
+            if (leading.compareAndSet(null, gate)) {
+                CompletableFuture<T> result;
+                try {
+                    result = operation.get();
+                } catch (RuntimeException e) {
+                    leading.set(null);
+                    gate.complete(null);
+                    throw e;
+                }
+                return result.whenComplete((r, throwable) -> {
+                    if (startTs.getAsLong() == 0) {
+                        leading.set(null);
+                    }
+                    gate.complete(null);
+                });
+            }
+        }
+    }
+}
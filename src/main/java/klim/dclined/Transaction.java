@@ -17,29 +17,49 @@ package klim.dclined;
 
 import com.google.protobuf.ByteString;
 import io.dgraph.DgraphGrpc.DgraphStub;
+import io.dgraph.DgraphProto;
 import io.dgraph.DgraphProto.Mutation;
 import io.dgraph.DgraphProto.NQuad;
 import io.dgraph.DgraphProto.TxnContext;
 
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * Instances of this class represent actions that should be executed in transactional manner.
  * Any modifications performed as part of a transaction are not visible to any other transactions
  * until the givem transaction is committed.
+ * <p>
+ * Queries and mutations of a transaction may be issued concurrently: the first one obtains the start timestamp
+ * while the others wait for it, after which they are all sent without waiting for each other. Commit should
+ * be issued once all of them have completed.
+ * <p>
+ * Repeated queries with the same text and variables are answered from the responses already received, unless
+ * the transaction has since modified a predicate the query may read, if enabled by {@link DClined#setQueryMemoization}.
  *
  * @author Michail Klimenkov
  */
 public class Transaction extends AbstractClient {
 
+    private final DClined client;
     private final DgraphStub stub;
     protected final AtomicReference<TransactionState> state;
+    private final TransactionTracker.Handle handle;
+    private final StartTsPipeline pipeline;
+    private final QueryMemo memo;
+    private final Priority priority;
 
-    Transaction(DgraphStub stub) {
+    Transaction(DClined client, DgraphStub stub, Priority priority) {
+        this.client = client;
         this.stub = stub;
+        this.priority = priority;
         this.state = new AtomicReference<>(new TransactionState());
+        this.pipeline = new StartTsPipeline(() -> this.state.get().getStartTs());
+        this.handle = client.getTransactionTracker().track(this, stub, state);
+        this.memo = client.isQueryMemoization() ? new QueryMemo() : null;
     }
 
 
@@ -55,9 +75,9 @@ public class Transaction extends AbstractClient {
     }
 
     @Override
-    protected Mutation newMutation(BiConsumer<Mutation.Builder, ByteString> stringNQuadSetter, String nQuads) {
+    protected Mutation newPayloadMutation(BiConsumer<Mutation.Builder, ByteString> payloadSetter, ByteString payload) {
         Mutation.Builder builder = Mutation.newBuilder();
-        stringNQuadSetter.accept(builder, ByteString.copyFromUtf8(nQuads));
+        payloadSetter.accept(builder, payload);
 
         TransactionState state = this.state.get();
         return builder.setStartTs(state.getStartTs()).build();
@@ -70,6 +90,14 @@ public class Transaction extends AbstractClient {
      * @return
      */
     public CompletableFuture<Void> commit() {
+        handle.finish();
+        if (memo != null) {
+            memo.clear();
+        }
+        return pipeline.dispatch(this::sendCommit);
+    }
+
+    private CompletableFuture<Void> sendCommit() {
         TransactionState state = this.state.get();
 
         TxnContext context = TxnContext.newBuilder()
@@ -78,26 +106,97 @@ public class Transaction extends AbstractClient {
                 .addAllPreds(state.getPreds())
                 .build();
 
+        MetricsListener metrics = getMetrics();
         StreamObserverBridge<TxnContext> bridge = new StreamObserverBridge<>();
+        long sent = System.nanoTime();
         stub.commitOrAbort(context, bridge);
 
         return bridge
                 .getDelegate()
                 .handle((TxnContext txnContext, Throwable throwable) -> {
                     if (throwable != null) {
-                        throw launderException(throwable);
+                        throw launderException(OperationType.COMMIT, throwable);
                     }
+                    if (txnContext != null) {
+                        getLinReadWatermarks().merge(txnContext.getLinRead());
+                    }
+                    metrics.onCall(OperationType.COMMIT, System.nanoTime() - sent, context.getSerializedSize(), txnContext == null ? 0 : txnContext.getSerializedSize());
                     return null;
                 });
     }
 
     /**
-     * Aborts this transaction discarding any uncommitted modifications.
+     * Aborts this transaction discarding any uncommitted modifications. Like commit, the abort waits for
+     * the operation obtaining the start timestamp, so that it does not overtake it.
      *
      * @return
      */
     public CompletableFuture<Void> abort() {
-        return abort(stub);
+        handle.finish();
+        if (memo != null) {
+            memo.clear();
+        }
+        return pipeline.dispatch(() -> abort(stub));
+    }
+
+    @Override
+    <T> CompletableFuture<T> execute(String query, Map<String, String> variables, int maxResponseBytes,
+                                     Function<DgraphProto.Response, T> decoder) {
+        if (memo == null) {
+            handle.begin();
+            return pipeline.dispatch(() -> super.execute(query, variables, maxResponseBytes, decoder))
+                    .whenComplete((result, throwable) -> handle.end());
+        }
+
+        Query key = QueryMemo.key(query, variables);
+        DgraphProto.Response memoized = memo.get(key);
+        if (memoized != null) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            // a transaction answered from memo is still in use and must not be reaped as idle
+            handle.begin();
+            try {
+                if (maxResponseBytes > 0) {
+                    checkResponseSize(query, memoized, null, maxResponseBytes);
+                }
+                result.complete(decoder.apply(memoized));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                handle.end();
+            }
+            return result;
+        }
+
+        handle.begin();
+        return pipeline.dispatch(() -> {
+            long version = memo.version();
+            return super.execute(query, variables, maxResponseBytes, (DgraphProto.Response response) -> {
+                memo.put(key, response, version);
+                return decoder.apply(response);
+            });
+        }).whenComplete((result, throwable) -> handle.end());
+    }
+
+    @Override
+    protected CompletableFuture<Map<String, String>> mutate(Mutation mutation) {
+        handle.begin();
+        return pipeline.dispatch(() -> {
+            if (memo != null) {
+                memo.mutating();
+            }
+            // the mutation may have been built before the start timestamp was fixed
+            long startTs = state.get().getStartTs();
+            return super.mutate(mutation.getStartTs() == startTs ? mutation : mutation.toBuilder().setStartTs(startTs).build());
+        }).whenComplete((uids, throwable) -> {
+            handle.end();
+            if (memo != null && QueryMemo.deletesAll(mutation)) {
+                memo.clear();
+            }
+            if (throwable != null) {
+                // failed mutation aborts the transaction
+                handle.finish();
+            }
+        });
     }
 
     @Override
@@ -106,12 +205,55 @@ public class Transaction extends AbstractClient {
     }
 
     @Override
-    protected DgraphStub getStub() {
+    protected DgraphStub getStub(OperationType type) {
         return stub;
     }
 
+    @Override
+    protected AbstractClient snapshot() {
+        return this;
+    }
+
+    @Override
+    protected MetricsListener getMetrics() {
+        return client.getMetrics();
+    }
+
+    @Override
+    protected SlowOperationLog getSlowOperationLog() {
+        return client.getSlowOperationLog();
+    }
+
+    @Override
+    protected Compression getCompression() {
+        return client.getCompression();
+    }
+
+    @Override
+    protected LinReadWatermarks getLinReadWatermarks() {
+        return client.getLinReadWatermarks();
+    }
+
+    @Override
+    protected int getMaxResponseBytes() {
+        return client.getMaxResponseBytes();
+    }
+
+    @Override
+    protected Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    protected PriorityDispatcher getDispatcher() {
+        return client.getDispatcher();
+    }
+
     @Override
     protected synchronized void mergeContext(TxnContext context) {
+        if (memo != null) {
+            memo.invalidate(context.getPredsList());
+        }
         TransactionState freshState = this.state.get().mergeContext(context);
         this.state.set(freshState);
     }
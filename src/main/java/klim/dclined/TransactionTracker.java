@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import io.dgraph.DgraphGrpc.DgraphStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps track of the open transactions of a client and aborts the ones that became unreachable or stayed idle
+ * past the timeout without being committed or aborted, so that the server can release their pending writes.
+ * Transactions without any writes are just forgotten.
+ *
+ * @author Michail Klimenkov
+ */
+class TransactionTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionTracker.class);
+
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "dclined-transaction-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DClined client;
+    private final ReferenceQueue<Transaction> unreachable = new ReferenceQueue<>();
+    private final Set<Handle> open = ConcurrentHashMap.newKeySet();
+    private final ScheduledFuture<?> sweeping;
+    private volatile long idleTimeoutNanos;
+
+    TransactionTracker(DClined client) {
+        this.client = client;
+        this.sweeping = REAPER.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+
+    Handle track(Transaction transaction, DgraphStub stub, AtomicReference<TransactionState> state) {
+        Handle handle = new Handle(transaction, stub, state);
+        open.add(handle);
+        return handle;
+    }
+
+    void setIdleTimeout(long timeout, TimeUnit unit) {
+        this.idleTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    int getOpenCount() {
+        return open.size();
+    }
+
+    long[] getAges(TimeUnit unit) {
+        long now = System.nanoTime();
+        long[] ages = open.stream().mapToLong((Handle handle) -> unit.convert(now - handle.created, TimeUnit.NANOSECONDS)).toArray();
+        Arrays.sort(ages);
+        return ages;
+    }
+
+    void sweep() {
+        Handle handle;
+        while ((handle = (Handle) unreachable.poll()) != null) {
+            if (handle.finish()) {
+                abort(handle, "unreachable");
+            }
+        }
+
+        long timeout = idleTimeoutNanos;
+        if (timeout > 0) {
+            long now = System.nanoTime();
+            for (Handle candidate : open) {
+                if (candidate.inFlight.get() == 0 && now - candidate.lastActive > timeout && candidate.finish()) {
+                    abort(candidate, "idle");
+                }
+            }
+        }
+    }
+
+    private void abort(Handle handle, String reason) {
+        TransactionState state = handle.state.get();
+        if (state.getStartTs() == 0 || (state.getKeys().isEmpty() && state.getPreds().isEmpty())) {
+            return;
+        }
+        LOG.warn("Aborting {} transaction with startTs={}, open for {}ms, commit or abort transactions explicitly", reason,
+                state.getStartTs(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - handle.created));
+        AbstractClient.abort(handle.stub, state, client.getMetrics());
+    }
+
+    void close() {
+        sweeping.cancel(false);
+    }
+
+    /**
+     * Tracking state of a single transaction, which must not refer to the transaction itself.
+     */
+    class Handle extends PhantomReference<Transaction> {
+        private final DgraphStub stub;
+        private final AtomicReference<TransactionState> state;
+        private final long created = System.nanoTime();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile long lastActive = created;
+
+        Handle(Transaction transaction, DgraphStub stub, AtomicReference<TransactionState> state) {
+            super(transaction, unreachable);
+            this.stub = stub;
+            this.state = state;
+        }
+
+        void begin() {
+            inFlight.incrementAndGet();
+            lastActive = System.nanoTime();
+        }
+
+        void end() {
+            lastActive = System.nanoTime();
+            inFlight.decrementAndGet();
+        }
+
+        /**
+         * Stops tracking the transaction.
+         *
+         * @return true if the transaction has not been finished before
+         */
+        boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            open.remove(this);
+            return true;
+        }
+    }
+}
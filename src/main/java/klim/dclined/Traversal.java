@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.dgraph.DgraphProto;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * Breadth-first traversal of the graph whose depth is decided at runtime. Each hop expands the whole
+ * frontier, querying up to batchSize nodes with a single uid(...) query and running up to parallelism
+ * such queries at a time. Example usage:
+ * <pre>
+ *     client.traverse(0x1, 0x2)
+ *             .via("friend", "~friend")
+ *             .maxDepth(4)
+ *             .maxFanOut(100)
+ *             .limit(10_000)
+ *             .execute()
+ *             .thenAccept((TraversalResult result) -&gt; ...);
+ * </pre>
+ * All hops read at the same start timestamp: the traversal runs within the transaction it is started from,
+ * or within a fresh read-only snapshot when started from {@link DClined}.
+ *
+ * @author Michail Klimenkov
+ */
+public class Traversal {
+
+    private final AbstractClient client;
+    private final long[] start;
+    private String[] predicates = new String[0];
+    private int maxDepth = 3;
+    private int maxFanOut = 0;
+    private int limit = 100_000;
+    private int batchSize = 256;
+    private int parallelism = 4;
+
+    Traversal(AbstractClient client, long[] start) {
+        this.client = client;
+        this.start = start;
+    }
+
+    /**
+     * Predicates to follow from every node, prefix with ~ to follow reverse edges.
+     *
+     * @param predicates
+     * @return current instance
+     */
+    public Traversal via(String... predicates) {
+        this.predicates = predicates;
+        return this;
+    }
+
+    /**
+     * Maximal number of hops from the start nodes, defaults to 3.
+     */
+    public Traversal maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Maximal number of edges of each predicate followed from a single node, 0 for unlimited (default).
+     */
+    public Traversal maxFanOut(int maxFanOut) {
+        this.maxFanOut = maxFanOut;
+        return this;
+    }
+
+    /**
+     * Maximal number of visited nodes including the start ones, defaults to 100000.
+     */
+    public Traversal limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Number of nodes expanded by a single query, defaults to 256.
+     */
+    public Traversal batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Number of queries executed concurrently, defaults to 4.
+     */
+    public Traversal parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Executes the traversal.
+     *
+     * @return
+     */
+    public CompletableFuture<TraversalResult> execute() {
+        if (predicates.length == 0) {
+            throw new IllegalStateException("No predicates to traverse via");
+        }
+        if (batchSize <= 0 || parallelism <= 0) {
+            throw new IllegalStateException("batchSize and parallelism must be positive");
+        }
+
+        AbstractClient snapshot = client.snapshot();
+        Progress progress = new Progress();
+        LongArrayList first = new LongArrayList(start.length);
+        for (long uid : start) {
+            if (progress.isFull()) {
+                progress.truncated = true;
+                break;
+            }
+            if (progress.visited.add(uid)) {
+                first.add(uid);
+            }
+        }
+        long[] frontier = first.toArray();
+        progress.levels.add(frontier);
+
+        return expand(snapshot, frontier, 1, progress)
+                .thenApply((v) -> new TraversalResult(progress.levels, progress.visited.toArray(), progress.truncated));
+    }
+
+    private CompletableFuture<Void> expand(AbstractClient snapshot, long[] frontier, int depth, Progress progress) {
+        if (frontier.length == 0 || depth > maxDepth) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (progress.isFull()) {
+            progress.truncated = true;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Level level = new Level(frontier, progress);
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = expandBatches(snapshot, level);
+        }
+
+        return CompletableFuture.allOf(workers)
+                .thenCompose((v) -> {
+                    long[] next = level.next.toArray();
+                    if (next.length > 0) {
+                        progress.levels.add(next);
+                    }
+                    return expand(snapshot, next, depth + 1, progress);
+                });
+    }
+
+    private CompletableFuture<Void> expandBatches(AbstractClient snapshot, Level level) {
+        int from = level.cursor.getAndIncrement() * batchSize;
+        if (from >= level.frontier.length) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (level.progress.isFull()) {
+            // the limit was reached before this batch was expanded
+            level.progress.truncated = true;
+            return CompletableFuture.completedFuture(null);
+        }
+        int to = Math.min(level.frontier.length, from + batchSize);
+
+        return snapshot.execute(query(level.frontier, from, to), emptyMap(), Traversal::neighbours)
+                .thenCompose((long[] neighbours) -> {
+                    level.accept(neighbours);
+                    return expandBatches(snapshot, level);
+                });
+    }
+
+    String query(long[] frontier, int from, int to) {
+        StringBuilder query = new StringBuilder("{ q(func: uid(");
+        Uids.appendAll(query, frontier, from, to).append(")) {");
+        for (String predicate : predicates) {
+            query.append(' ').append(predicate);
+            if (maxFanOut > 0) {
+                query.append(" (first: ").append(maxFanOut).append(')');
+            }
+            query.append(" { uid }");
+        }
+        return query.append(" } }").toString();
+    }
+
+    /**
+     * Collects all the uids present in the response.
+     *
+     * @param response
+     * @return
+     */
+    static long[] neighbours(DgraphProto.Response response) {
+        LongArrayList uids = new LongArrayList();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(response.getJson().newInput(), StandardCharsets.UTF_8))) {
+            collectUids(reader, uids);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return uids.toArray();
+    }
+
+    private static void collectUids(JsonReader reader, LongArrayList uids) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("uid".equals(name) && reader.peek() == JsonToken.STRING) {
+                        uids.add(Uids.parse(reader.nextString()));
+                    } else {
+                        collectUids(reader, uids);
+                    }
+                }
+                reader.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    collectUids(reader, uids);
+                }
+                reader.endArray();
+                break;
+            case END_DOCUMENT:
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    private class Progress {
+        private final LongHashSet visited = new LongHashSet(Math.max(16, start.length));
+        private final List<long[]> levels = new ArrayList<>();
+        private volatile boolean truncated;
+
+        boolean isFull() {
+            return visited.size() >= limit;
+        }
+    }
+
+    private static class Level {
+        private final long[] frontier;
+        private final Progress progress;
+        private final AtomicInteger cursor = new AtomicInteger();
+        private final LongArrayList next = new LongArrayList();
+
+        Level(long[] frontier, Progress progress) {
+            this.frontier = frontier;
+            this.progress = progress;
+        }
+
+        void accept(long[] neighbours) {
+            synchronized (progress) {
+                for (long uid : neighbours) {
+                    if (progress.isFull()) {
+                        progress.truncated = true;
+                        return;
+                    }
+                    if (progress.visited.add(uid)) {
+                        next.add(uid);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Instances of this class represent nodes reached by a {@link Traversal}, grouped by the hop they were first reached at.
+ *
+ * @author Michail Klimenkov
+ */
+public class TraversalResult {
+    private final List<long[]> levels;
+    private final long[] visited;
+    private final boolean truncated;
+
+    TraversalResult(List<long[]> levels, long[] visited, boolean truncated) {
+        this.levels = Collections.unmodifiableList(levels);
+        this.visited = visited;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @return uids first reached at each hop; level 0 holds the start nodes
+     */
+    public List<long[]> getLevels() {
+        return levels;
+    }
+
+    /**
+     * @return uids of all the visited nodes, including the start nodes
+     */
+    public long[] getVisited() {
+        return visited;
+    }
+
+    /**
+     * @return number of hops that reached at least one new node
+     */
+    public int getDepth() {
+        return levels.size() - 1;
+    }
+
+    /**
+     * @return true if the traversal stopped because the result limit was reached
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
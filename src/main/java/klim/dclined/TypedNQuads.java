@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.SchemaNode;
+import io.dgraph.DgraphProto.Value;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds nquads with values encoded according to the declared type of their predicates, so that
+ * the server does not have to parse and coerce every value from its string representation.
+ * The schema is taken from {@link SchemaManager}, example usage:
+ * <pre>
+ *     client.getSchemaManager().typedNQuads()
+ *             .thenCompose((TypedNQuads nQuads) -&gt; client.set(nQuads
+ *                     .nQuad("_:person", "person.age", 42)
+ *                     .nQuad("_:person", "person.born", Instant.parse("1976-03-01T00:00:00Z"))
+ *                     .nQuad("_:person", "person.location", new double[]{-0.12, 51.5})));
+ * </pre>
+ * Values are mapped as follows:
+ * <ul>
+ *     <li>int - any integral number or its string representation</li>
+ *     <li>float - any number or its string representation</li>
+ *     <li>bool - boolean or its string representation</li>
+ *     <li>datetime - Date, Instant, OffsetDateTime, ZonedDateTime, LocalDateTime (UTC) or LocalDate (UTC midnight)</li>
+ *     <li>geo - point as double[]{longitude, latitude}; strings are sent as GeoJSON to be parsed by the server</li>
+ *     <li>uid - uid or blank node reference as a string, or a numeric uid</li>
+ * </ul>
+ * Collections are expanded into one nquad per element for list predicates. Predicates missing
+ * from the schema are typed by the Java type of the value.
+ *
+ * @author Michail Klimenkov
+ */
+public class TypedNQuads {
+
+    /**
+     * Seconds between 0001-01-01 and 1970-01-01, the epoch used by the server's binary time format.
+     */
+    private static final long UNIX_TO_INTERNAL = 62135596800L;
+
+    private final Map<String, SchemaNode> schema;
+    private final List<NQuad> nQuads = new ArrayList<>();
+
+    TypedNQuads(Map<String, SchemaNode> schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Appends nquad with the value encoded according to the schema of the predicate.
+     *
+     * @param subject   - uid or blank node reference
+     * @param predicate
+     * @param value
+     * @return current instance
+     */
+    public TypedNQuads nQuad(String subject, String predicate, Object value) {
+        return nQuad(subject, predicate, value, null);
+    }
+
+    /**
+     * Appends nquad with language tagged value. The predicate must be declared with @lang directive.
+     *
+     * @param subject   - uid or blank node reference
+     * @param predicate
+     * @param value
+     * @param lang
+     * @return current instance
+     */
+    public TypedNQuads nQuad(String subject, String predicate, Object value, String lang) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value of " + predicate + " must not be null");
+        }
+        SchemaNode node = schema.get(predicate);
+
+        if (lang != null && node != null && !node.getLang()) {
+            throw new IllegalArgumentException("Predicate " + predicate + " does not have @lang directive");
+        }
+
+        if (value instanceof Collection) {
+            Collection<?> values = (Collection<?>) value;
+            if (node != null && !node.getList() && values.size() > 1) {
+                throw new IllegalArgumentException("Predicate " + predicate + " is not a list");
+            }
+            for (Object element : values) {
+                nQuads.add(encode(subject, predicate, element, lang, node));
+            }
+        } else {
+            nQuads.add(encode(subject, predicate, value, lang, node));
+        }
+        return this;
+    }
+
+    public List<NQuad> getNQuads() {
+        return nQuads;
+    }
+
+    public NQuad[] toArray() {
+        return nQuads.toArray(new NQuad[0]);
+    }
+
+    private static NQuad encode(String subject, String predicate, Object value, String lang, SchemaNode node) {
+        NQuad.Builder builder = NQuad.newBuilder()
+                .setSubject(reference(subject))
+                .setPredicate(predicate);
+        if (lang != null) {
+            builder.setLang(lang);
+        }
+
+        String type = node == null ? inferType(value) : node.getType();
+        if ("uid".equals(type)) {
+            return builder.setObjectId(value instanceof Number ? Uids.format(((Number) value).longValue()) : reference(value.toString()))
+                    .build();
+        }
+        return builder.setObjectValue(encodeValue(predicate, type, value)).build();
+    }
+
+    static Value encodeValue(String predicate, String type, Object value) {
+        Value.Builder builder = Value.newBuilder();
+        switch (type) {
+            case "int":
+                return builder.setIntVal(toLong(predicate, value)).build();
+            case "float":
+                return builder.setDoubleVal(value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString())).build();
+            case "bool":
+                return builder.setBoolVal(value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString())).build();
+            case "datetime":
+                return builder.setDatetimeVal(dateTime(predicate, value)).build();
+            case "geo":
+                if (value instanceof double[]) {
+                    return builder.setGeoVal(point(predicate, (double[]) value)).build();
+                }
+                return builder.setDefaultVal(value.toString()).build();
+            case "string":
+                return builder.setStrVal(value.toString()).build();
+            case "password":
+                return builder.setPasswordVal(value.toString()).build();
+            default:
+                return builder.setDefaultVal(value.toString()).build();
+        }
+    }
+
+    static String inferType(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return "int";
+        }
+        if (value instanceof Number) {
+            return "float";
+        }
+        if (value instanceof Boolean) {
+            return "bool";
+        }
+        if (value instanceof Date || value instanceof Instant || value instanceof OffsetDateTime
+                || value instanceof ZonedDateTime || value instanceof LocalDateTime || value instanceof LocalDate) {
+            return "datetime";
+        }
+        if (value instanceof double[]) {
+            return "geo";
+        }
+        return "default";
+    }
+
+    private static String reference(String node) {
+        if (node.startsWith("<") && node.endsWith(">")) {
+            return node.substring(1, node.length() - 1);
+        }
+        return node;
+    }
+
+    private static long toLong(String predicate, Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (d != Math.rint(d)) {
+                throw new IllegalArgumentException("Value of int predicate " + predicate + " is not integral: " + value);
+            }
+            return (long) d;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return Long.parseLong(value.toString());
+    }
+
+    /**
+     * Encodes the instant in the binary time format of the server (version, seconds since year 1,
+     * nanoseconds, zone offset in minutes where -1 stands for UTC).
+     */
+    static ByteString dateTime(String predicate, Object value) {
+        Instant instant;
+        if (value instanceof Instant) {
+            instant = (Instant) value;
+        } else if (value instanceof Date) {
+            instant = ((Date) value).toInstant();
+        } else if (value instanceof OffsetDateTime) {
+            instant = ((OffsetDateTime) value).toInstant();
+        } else if (value instanceof ZonedDateTime) {
+            instant = ((ZonedDateTime) value).toInstant();
+        } else if (value instanceof LocalDateTime) {
+            instant = ((LocalDateTime) value).toInstant(ZoneOffset.UTC);
+        } else if (value instanceof LocalDate) {
+            instant = ((LocalDate) value).atStartOfDay().toInstant(ZoneOffset.UTC);
+        } else {
+            instant = OffsetDateTime.parse(value.toString()).toInstant();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(15);
+        buffer.put((byte) 1);
+        buffer.putLong(instant.getEpochSecond() + UNIX_TO_INTERNAL);
+        buffer.putInt(instant.getNano());
+        buffer.putShort((short) -1);
+        return ByteString.copyFrom(buffer.array());
+    }
+
+    /**
+     * Encodes point in little endian WKB.
+     */
+    static ByteString point(String predicate, double[] coordinates) {
+        if (coordinates.length != 2) {
+            throw new IllegalArgumentException("Point of " + predicate + " must be {longitude, latitude}");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(21).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 1);
+        buffer.putInt(1);
+        buffer.putDouble(coordinates[0]);
+        buffer.putDouble(coordinates[1]);
+        return ByteString.copyFrom(buffer.array());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+/**
+ * Conversions between uids in their textual "0x.." form and longs.
+ *
+ * @author Michail Klimenkov
+ */
+public class Uids {
+
+    private Uids() {
+    }
+
+    /**
+     * Parses uid such as "0x1f" or "&lt;0x1f&gt;".
+     *
+     * @param uid
+     * @return
+     */
+    public static long parse(String uid) {
+        int start = uid.startsWith("<") ? 1 : 0;
+        int end = uid.endsWith(">") ? uid.length() - 1 : uid.length();
+        if (uid.startsWith("0x", start) || uid.startsWith("0X", start)) {
+            return Long.parseUnsignedLong(uid.substring(start + 2, end), 16);
+        }
+        return Long.parseUnsignedLong(uid.substring(start, end));
+    }
+
+    /**
+     * Formats uid as "0x1f".
+     *
+     * @param uid
+     * @return
+     */
+    public static String format(long uid) {
+        return "0x" + Long.toHexString(uid);
+    }
+
+    /**
+     * Appends comma separated uids, as used by uid() function, to the supplied builder.
+     *
+     * @param builder
+     * @param uids
+     * @param from
+     * @param to
+     * @return the builder
+     */
+    static StringBuilder appendAll(StringBuilder builder, long[] uids, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                builder.append(',');
+            }
+            builder.append("0x").append(Long.toHexString(uids[i]));
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the work performed by {@link DClined#warmUp(WarmUp)} besides connecting the channels. Example usage:
+ * <pre>
+ *     client.warmUp(new WarmUp()
+ *             .type(Person.class)
+ *             .query("{ q(func: eq(person.email, \"starmaker@mail.com\")) { uid person.email } }", PersonResponse.class)
+ *             .encode(new Person("starmaker@mail.com"))
+ *             .encode(nQuad("_:person", "person.email", "starmaker@mail.com")));
+ * </pre>
+ * Queries are sent to the server, so they should be read-only and cheap; encodings are performed locally only.
+ *
+ * @author Michail Klimenkov
+ */
+public class WarmUp {
+
+    private final List<TypeToken<?>> types = new ArrayList<>();
+    private final Map<String, TypeToken<?>> queries = new LinkedHashMap<>();
+    private final List<Object> objects = new ArrayList<>();
+    private final List<String> nQuads = new ArrayList<>();
+    private int queryRepetitions = 10;
+    private int encodingRepetitions = 1000;
+
+    /**
+     * Type whose JSON adapter should be built up front.
+     *
+     * @param type
+     * @return current instance
+     */
+    public WarmUp type(TypeToken<?> type) {
+        types.add(type);
+        return this;
+    }
+
+    public WarmUp type(Class<?> type) {
+        return type(TypeToken.get(type));
+    }
+
+    /**
+     * Representative query, whose response is decoded to the given type.
+     *
+     * @param query
+     * @param type
+     * @return current instance
+     */
+    public WarmUp query(String query, TypeToken<?> type) {
+        queries.put(query, type);
+        return this;
+    }
+
+    public WarmUp query(String query, Class<?> type) {
+        return query(query, TypeToken.get(type));
+    }
+
+    /**
+     * Representative object to be encoded as JSON mutation.
+     *
+     * @param object
+     * @return current instance
+     */
+    public WarmUp encode(Object object) {
+        objects.add(object);
+        return this;
+    }
+
+    /**
+     * Representative nquads to be encoded as mutation.
+     *
+     * @param nQuads
+     * @return current instance
+     */
+    public WarmUp encode(NQuads nQuads) {
+        this.nQuads.add(nQuads.toString());
+        return this;
+    }
+
+    /**
+     * How many times the queries and the encodings are repeated, defaults to 10 and 1000 respectively.
+     *
+     * @param queries
+     * @param encodings
+     * @return current instance
+     */
+    public WarmUp repetitions(int queries, int encodings) {
+        if (queries < 0 || encodings < 0) {
+            throw new IllegalArgumentException("Repetitions must not be negative");
+        }
+        this.queryRepetitions = queries;
+        this.encodingRepetitions = encodings;
+        return this;
+    }
+
+    List<TypeToken<?>> getTypes() {
+        return types;
+    }
+
+    Map<String, TypeToken<?>> getQueries() {
+        return queries;
+    }
+
+    List<Object> getObjects() {
+        return objects;
+    }
+
+    List<String> getNQuads() {
+        return nQuads;
+    }
+
+    int getQueryRepetitions() {
+        return queryRepetitions;
+    }
+
+    int getEncodingRepetitions() {
+        return encodingRepetitions;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import java.io.Closeable;
+
+/**
+ * Subscription to the changes of a query result, see {@link DClined#watch}. Closing it stops the notifications;
+ * the underlying poll stops once all the subscriptions to it are closed.
+ *
+ * @author Michail Klimenkov
+ */
+public class Watch implements Closeable {
+
+    private final Runnable unsubscribe;
+
+    Watch(Runnable unsubscribe) {
+        this.unsubscribe = unsubscribe;
+    }
+
+    @Override
+    public void close() {
+        unsubscribe.run();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.gson.reflect.TypeToken;
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphProto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Polls watched queries of a client. Watches of the same query and variables share one poll, which runs at
+ * the shortest interval requested by its subscribers. Responses are compared by a hash of their raw JSON
+ * and decoded only when it changes, once per requested type. While the result stays the same, the interval
+ * grows by a quarter on every poll up to {@link #MAX_SLOWDOWN} times the requested one; a change resets it.
+ *
+ * @author Michail Klimenkov
+ */
+class Watcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Watcher.class);
+
+    static final int MAX_SLOWDOWN = 8;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "dclined-watch-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DClined client;
+    private final Map<Query, Poll> polls = new ConcurrentHashMap<>();
+
+    Watcher(DClined client) {
+        this.client = client;
+    }
+
+    <T> Watch watch(String query, Map<String, String> variables, long interval, TimeUnit unit, TypeToken<T> type, Consumer<T> listener) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        Subscriber<T> subscriber = new Subscriber<>(unit.toNanos(interval), type, listener);
+        Query key = new Query(query, new HashMap<>(variables));
+        while (true) {
+            Poll poll = polls.computeIfAbsent(key, Poll::new);
+            if (poll.subscribe(subscriber)) {
+                return new Watch(() -> poll.unsubscribe(subscriber));
+            }
+            // the poll has just been stopped by its last subscriber
+            polls.remove(key, poll);
+        }
+    }
+
+    int getPollCount() {
+        return polls.size();
+    }
+
+    void close() {
+        for (Poll poll : polls.values()) {
+            poll.stop();
+        }
+        polls.clear();
+    }
+
+    static long hash(ByteString json) {
+        ByteBuffer bytes = json.asReadOnlyByteBuffer();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            hash = (hash ^ bytes.get(i)) * 0x100000001b3L;
+        }
+        return hash ^ json.size();
+    }
+
+    private class Poll {
+        private final Query key;
+        private final List<Subscriber<?>> subscribers = new CopyOnWriteArrayList<>();
+        private boolean stopped;
+        private long requestedNanos = Long.MAX_VALUE;
+        private long intervalNanos;
+        private ScheduledFuture<?> next;
+        // only the most recently scheduled run polls, and nothing is scheduled while a poll is in flight
+        private long generation;
+        private boolean inFlight;
+        private ByteString last;
+        private long lastHash;
+
+        Poll(Query key) {
+            this.key = key;
+        }
+
+        synchronized boolean subscribe(Subscriber<?> subscriber) {
+            if (stopped) {
+                return false;
+            }
+            subscribers.add(subscriber);
+            if (last != null) {
+                subscriber.notify(last, lastHash, new HashMap<>());
+            }
+            if (subscriber.intervalNanos < requestedNanos) {
+                requestedNanos = subscriber.intervalNanos;
+                intervalNanos = requestedNanos;
+                if (!inFlight) {
+                    if (next != null) {
+                        next.cancel(false);
+                    }
+                    schedule(last == null ? 0 : intervalNanos);
+                }
+            }
+            return true;
+        }
+
+        synchronized void unsubscribe(Subscriber<?> subscriber) {
+            if (!subscribers.remove(subscriber) || stopped) {
+                return;
+            }
+            if (subscribers.isEmpty()) {
+                stop();
+                polls.remove(key, this);
+                return;
+            }
+            requestedNanos = subscribers.stream().mapToLong((Subscriber<?> s) -> s.intervalNanos).min().getAsLong();
+            intervalNanos = Math.max(intervalNanos, requestedNanos);
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+
+        private void schedule(long delayNanos) {
+            long scheduled = ++generation;
+            next = SCHEDULER.schedule(() -> poll(scheduled), delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void poll(long scheduled) {
+            synchronized (this) {
+                if (stopped || scheduled != generation) {
+                    return;
+                }
+                inFlight = true;
+            }
+            client.execute(key.getQuery(), key.getVariables(), (DgraphProto.Response response) -> response.getJson())
+                    .whenComplete((ByteString json, Throwable throwable) -> {
+                        if (throwable != null) {
+                            LOG.warn("Watched query failed: {}", key.getQuery(), throwable);
+                        } else {
+                            onResult(json);
+                        }
+                        scheduleNext();
+                    });
+        }
+
+        private void onResult(ByteString json) {
+            long hash = hash(json);
+            synchronized (this) {
+                if (last != null && hash == lastHash) {
+                    intervalNanos = Math.min(requestedNanos * MAX_SLOWDOWN, intervalNanos + intervalNanos / 4);
+                    return;
+                }
+                last = json;
+                lastHash = hash;
+                intervalNanos = requestedNanos;
+            }
+            Map<TypeToken<?>, Object> decoded = new HashMap<>();
+            for (Subscriber<?> subscriber : subscribers) {
+                subscriber.notify(json, hash, decoded);
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            inFlight = false;
+            if (!stopped) {
+                schedule(intervalNanos);
+            }
+        }
+    }
+
+    private class Subscriber<T> {
+        private final long intervalNanos;
+        private final TypeToken<T> type;
+        private final Consumer<T> listener;
+        private boolean notified;
+        private long lastHash;
+
+        Subscriber(long intervalNanos, TypeToken<T> type, Consumer<T> listener) {
+            this.intervalNanos = intervalNanos;
+            this.type = type;
+            this.listener = listener;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void notify(ByteString json, long hash, Map<TypeToken<?>, Object> decoded) {
+            if (notified && hash == lastHash) {
+                return;
+            }
+            notified = true;
+            lastHash = hash;
+            try {
+                listener.accept((T) decoded.computeIfAbsent(type, (TypeToken<?> t) -> client.decode(json, t)));
+            } catch (RuntimeException e) {
+                LOG.warn("Watch listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+import klim.dclined.DgraphNode;
+import klim.dclined.Predicate;
+
+/**
+ * Node declared in the default package, with a predicate name that needs escaping in Java source.
+ */
+@DgraphNode
+public class DefaultPackageNode {
+    @Predicate("say \"hi\" \\ there")
+    public String greeting = "hello";
+}
@@ -0,0 +1,113 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.Request;
+import io.dgraph.DgraphProto.Response;
+import io.grpc.ManagedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChannelPoolTest {
+
+    private static final String QUERY = "{ q(func: uid(0x1)) { uid } }";
+
+    @Test
+    public void testRoundRobinUsesChannelsInTurns() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            ChannelPool pool = new ChannelPool(ChannelPool.Balancing.ROUND_ROBIN,
+                    Arrays.asList(server.newChannel(), server.newChannel(), server.newChannel()));
+            try {
+                for (int i = 0; i < 7; i++) {
+                    assertSame(pool.stub(i % 3), pool.next());
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testLeastLoadedAvoidsBusyChannel() throws InterruptedException {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setLatency(OperationType.QUERY, FakeDgraphServer.fixed(200, TimeUnit.MILLISECONDS));
+            ChannelPool pool = new ChannelPool(server.newChannel(), server.newChannel());
+            try {
+                List<CompletableFuture<Response>> calls = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    StreamObserverBridge<Response> bridge = new StreamObserverBridge<>();
+                    pool.stub(0).query(Request.newBuilder().setQuery(QUERY).build(), bridge);
+                    calls.add(bridge.getDelegate());
+                }
+                assertEquals(3, pool.getInFlight(0));
+                for (int i = 0; i < 4; i++) {
+                    assertSame(pool.stub(1), pool.next());
+                }
+
+                CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+                // calls are closed right after their responses are delivered
+                long deadline = System.currentTimeMillis() + 1000;
+                while (pool.getInFlight(0) > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+                assertEquals(0, pool.getInFlight(0));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testQueriesAndMutationsUseSeparatePools() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setLatency(OperationType.QUERY, FakeDgraphServer.fixed(200, TimeUnit.MILLISECONDS));
+            server.setLatency(OperationType.MUTATE, FakeDgraphServer.fixed(200, TimeUnit.MILLISECONDS));
+            ChannelPool queryPool = new ChannelPool(server.newChannel());
+            ChannelPool mutationPool = new ChannelPool(server.newChannel());
+
+            DClined client = new DClined(queryPool, mutationPool);
+            try {
+                CompletableFuture<Object> query = client.query(QUERY, Object.class);
+                assertEquals(1, queryPool.getInFlight(0));
+                assertEquals(0, mutationPool.getInFlight(0));
+
+                CompletableFuture<?> mutation = client.set("<0x1> <name> \"x\" .");
+                assertEquals(1, queryPool.getInFlight(0));
+                assertEquals(1, mutationPool.getInFlight(0));
+
+                // transactions stick to the query pool
+                CompletableFuture<?> transactional = client.newTransaction().set("<0x1> <name> \"y\" .");
+                assertEquals(2, queryPool.getInFlight(0));
+                assertEquals(1, mutationPool.getInFlight(0));
+
+                CompletableFuture.allOf(query, mutation, transactional).join();
+            } finally {
+                client.close();
+            }
+            assertTrue(queryPool.getChannels().get(0).isShutdown());
+            assertTrue(mutationPool.getChannels().get(0).isShutdown());
+        }
+    }
+
+    @Test
+    public void testShutdownClosesAllChannels() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            ChannelPool pool = ChannelPool.create(3, server::newChannel);
+            assertEquals(3, pool.size());
+
+            DClined client = new DClined(pool);
+            client.close();
+            for (ManagedChannel channel : pool.getChannels()) {
+                assertTrue(channel.isShutdown());
+            }
+            assertThrows(IllegalArgumentException.class,
+                    () -> new ChannelPool(ChannelPool.Balancing.ROUND_ROBIN, Collections.emptyList()));
+        }
+    }
+}
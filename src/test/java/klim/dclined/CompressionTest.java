@@ -0,0 +1,59 @@
+package klim.dclined;
+
+import io.dgraph.DgraphGrpc;
+import io.dgraph.DgraphGrpc.DgraphStub;
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionTest {
+
+    @Test
+    public void testCompressesOnlyAboveThreshold() {
+        ManagedChannel channel = InProcessChannelBuilder.forName("compression").build();
+        try {
+            DgraphStub stub = DgraphGrpc.newStub(channel);
+            Compression compression = Compression.gzip(1024);
+
+            assertNull(compression.apply(stub, 1023).getCallOptions().getCompressor());
+            assertEquals("gzip", compression.apply(stub, 1024).getCallOptions().getCompressor());
+            assertEquals(1, compression.getCompressedCalls());
+        } finally {
+            channel.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUsesCodecOfSuppliedRegistry() {
+        // private registry, the default one is global to the whole test run
+        CompressorRegistry compressors = CompressorRegistry.newEmptyInstance();
+        assertThrows(IllegalArgumentException.class, () -> new Compression("noop", 0, compressors));
+
+        compressors.register(new Codec() {
+            @Override
+            public String getMessageEncoding() {
+                return "noop";
+            }
+
+            @Override
+            public OutputStream compress(OutputStream os) {
+                return os;
+            }
+
+            @Override
+            public InputStream decompress(InputStream is) {
+                return is;
+            }
+        });
+
+        assertEquals("noop", new Compression("noop", 0, compressors).getCodec());
+        assertThrows(IllegalArgumentException.class, () -> new Compression("noop", 0));
+    }
+}
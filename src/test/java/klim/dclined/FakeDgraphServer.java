@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphGrpc;
+import io.dgraph.DgraphProto.Assigned;
+import io.dgraph.DgraphProto.Check;
+import io.dgraph.DgraphProto.Latency;
+import io.dgraph.DgraphProto.LinRead;
+import io.dgraph.DgraphProto.Mutation;
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.Operation;
+import io.dgraph.DgraphProto.Payload;
+import io.dgraph.DgraphProto.Request;
+import io.dgraph.DgraphProto.Response;
+import io.dgraph.DgraphProto.TxnContext;
+import io.dgraph.DgraphProto.Version;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * Scriptable in-process DGraph server for exercising the client without a cluster. It keeps a timestamp oracle only:
+ * queries return canned JSON, mutations assign no uids, report a single conflict key and nothing is stored. Example usage:
+ * <pre>
+ *     try (FakeDgraphServer server = FakeDgraphServer.start()) {
+ *         server.setLatency(OperationType.QUERY, FakeDgraphServer.logNormal(2, TimeUnit.MILLISECONDS, 0.5));
+ *         server.setAbortRate(0.05);
+ *         server.setQueryResponse((Request request) -&gt; "{\"q\":[{\"uid\":\"0x1\"}]}");
+ *         DClined client = new DClined(server.newChannel());
+ *         ...
+ *     }
+ * </pre>
+ * Injected latency is applied without blocking server threads and is reported back in the {@code Latency}
+ * field as processing time. Aborts are injected into commits and commit-now mutations. Every mutation advances
+ * the applied index of group 1, which is reported back in the lin read of the responses.
+ *
+ * @author Michail Klimenkov
+ */
+public class FakeDgraphServer extends DgraphGrpc.DgraphImplBase implements Closeable {
+
+    private final String name;
+    private final Server server;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong timestamps = new AtomicLong();
+    private final AtomicLong appliedIndex = new AtomicLong();
+    private final Map<OperationType, AtomicLong> calls = new EnumMap<>(OperationType.class);
+    private final AtomicReferenceArray<LongSupplier> latencies = new AtomicReferenceArray<>(OperationType.values().length);
+    private volatile Function<Request, String> queryResponse = (Request request) -> "{}";
+    private volatile Function<Mutation, Map<String, String>> mutationResponse = (Mutation mutation) -> emptyMap();
+    private volatile double abortRate;
+
+    private FakeDgraphServer() {
+        this.name = "fake-dgraph-" + UUID.randomUUID();
+        for (OperationType type : OperationType.values()) {
+            calls.put(type, new AtomicLong());
+            latencies.set(type.ordinal(), fixed(0, TimeUnit.NANOSECONDS));
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "fake-dgraph-latency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = InProcessServerBuilder.forName(name).addService(this).build();
+    }
+
+    /**
+     * Starts new server with no injected latency, aborts or canned data.
+     *
+     * @return started server
+     */
+    public static FakeDgraphServer start() {
+        FakeDgraphServer fake = new FakeDgraphServer();
+        try {
+            fake.server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fake;
+    }
+
+    /**
+     * @return new channel connected to this server
+     */
+    public ManagedChannel newChannel() {
+        return InProcessChannelBuilder.forName(name).build();
+    }
+
+    /**
+     * Sets the distribution of the time the server takes to respond to the given type of operations.
+     *
+     * @param type
+     * @param nanos - supplier of latency in nanoseconds, see the factory methods of this class
+     */
+    public void setLatency(OperationType type, LongSupplier nanos) {
+        latencies.set(type.ordinal(), nanos);
+    }
+
+    /**
+     * Sets the probability of commits and commit-now mutations failing with ABORTED status.
+     *
+     * @param abortRate - from 0 to 1
+     */
+    public void setAbortRate(double abortRate) {
+        if (abortRate < 0 || abortRate > 1) {
+            throw new IllegalArgumentException("abortRate must be between 0 and 1");
+        }
+        this.abortRate = abortRate;
+    }
+
+    /**
+     * @param queryResponse - JSON returned for the given query, "{}" by default
+     */
+    public void setQueryResponse(Function<Request, String> queryResponse) {
+        this.queryResponse = queryResponse;
+    }
+
+    /**
+     * @param mutationResponse - blank node to uid assignments returned for the given mutation, empty by default
+     */
+    public void setMutationResponse(Function<Mutation, Map<String, String>> mutationResponse) {
+        this.mutationResponse = mutationResponse;
+    }
+
+    /**
+     * @param type
+     * @return number of calls of the given type received so far
+     */
+    public long getCalls(OperationType type) {
+        return calls.get(type).get();
+    }
+
+    public static LongSupplier fixed(long latency, TimeUnit unit) {
+        long nanos = unit.toNanos(latency);
+        return () -> nanos;
+    }
+
+    public static LongSupplier uniform(long min, long max, TimeUnit unit) {
+        long minNanos = unit.toNanos(min);
+        long maxNanos = unit.toNanos(max);
+        return () -> ThreadLocalRandom.current().nextLong(minNanos, maxNanos + 1);
+    }
+
+    public static LongSupplier exponential(long mean, TimeUnit unit) {
+        double meanNanos = unit.toNanos(mean);
+        return () -> (long) (-meanNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /**
+     * Long tailed distribution typical for network services.
+     *
+     * @param median
+     * @param unit
+     * @param sigma  - standard deviation of the underlying normal distribution, the larger the longer the tail
+     * @return
+     */
+    public static LongSupplier logNormal(long median, TimeUnit unit, double sigma) {
+        double medianNanos = unit.toNanos(median);
+        return () -> (long) (medianNanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    @Override
+    public void query(Request request, StreamObserver<Response> responseObserver) {
+        long startTs = request.getStartTs() == 0 ? timestamps.incrementAndGet() : request.getStartTs();
+        respond(OperationType.QUERY, responseObserver, (Latency latency) -> Response.newBuilder()
+                .setJson(ByteString.copyFromUtf8(queryResponse.apply(request)))
+                .setTxn(TxnContext.newBuilder().setStartTs(startTs).setLinRead(linRead(appliedIndex.get())))
+                .setLatency(latency)
+                .build());
+    }
+
+    @Override
+    public void mutate(Mutation mutation, StreamObserver<Assigned> responseObserver) {
+        if (mutation.getCommitNow() && aborts()) {
+            reject(OperationType.MUTATE, responseObserver);
+            return;
+        }
+        long startTs = mutation.getStartTs() == 0 ? timestamps.incrementAndGet() : mutation.getStartTs();
+        TxnContext.Builder context = TxnContext.newBuilder()
+                .setStartTs(startTs)
+                .addKeys(Integer.toHexString(mutation.hashCode()))
+                .addAllPreds(preds(mutation))
+                .setLinRead(linRead(appliedIndex.incrementAndGet()));
+        if (mutation.getCommitNow()) {
+            context.setCommitTs(timestamps.incrementAndGet());
+        }
+        respond(OperationType.MUTATE, responseObserver, (Latency latency) -> Assigned.newBuilder()
+                .putAllUids(mutationResponse.apply(mutation))
+                .setContext(context)
+                .setLatency(latency)
+                .build());
+    }
+
+    @Override
+    public void alter(Operation operation, StreamObserver<Payload> responseObserver) {
+        respond(OperationType.ALTER, responseObserver, (Latency latency) -> Payload.getDefaultInstance());
+    }
+
+    @Override
+    public void commitOrAbort(TxnContext context, StreamObserver<TxnContext> responseObserver) {
+        OperationType type = context.getAborted() ? OperationType.ABORT : OperationType.COMMIT;
+        if (type == OperationType.COMMIT && aborts()) {
+            reject(type, responseObserver);
+            return;
+        }
+        respond(type, responseObserver, (Latency latency) -> type == OperationType.ABORT
+                ? context
+                : context.toBuilder().setCommitTs(timestamps.incrementAndGet()).build());
+    }
+
+    /**
+     * Predicates of the nquads of the mutation prefixed with group 1, as reported by the server.
+     */
+    private static Set<String> preds(Mutation mutation) {
+        Set<String> preds = new TreeSet<>();
+        for (NQuad nQuad : mutation.getSetList()) {
+            preds.add("1-" + nQuad.getPredicate());
+        }
+        for (NQuad nQuad : mutation.getDelList()) {
+            preds.add("1-" + nQuad.getPredicate());
+        }
+        for (ByteString nQuads : new ByteString[]{mutation.getSetNquads(), mutation.getDelNquads()}) {
+            for (String line : nQuads.toStringUtf8().split("\n")) {
+                String[] terms = line.trim().split("\\s+");
+                if (terms.length > 2) {
+                    preds.add("1-" + terms[1].replace("<", "").replace(">", ""));
+                }
+            }
+        }
+        return preds;
+    }
+
+    private static LinRead linRead(long index) {
+        return index == 0 ? LinRead.getDefaultInstance() : LinRead.newBuilder().putIds(1, index).build();
+    }
+
+    @Override
+    public void checkVersion(Check request, StreamObserver<Version> responseObserver) {
+        responseObserver.onNext(Version.newBuilder().setTag("fake").build());
+        responseObserver.onCompleted();
+    }
+
+    private boolean aborts() {
+        double rate = abortRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private <T> void respond(OperationType type, StreamObserver<T> responseObserver, Function<Latency, T> response) {
+        calls.get(type).incrementAndGet();
+        long delay = latency(type);
+        Runnable reply = () -> {
+            try {
+                responseObserver.onNext(response.apply(Latency.newBuilder().setProcessingNs(delay).build()));
+                responseObserver.onCompleted();
+            } catch (RuntimeException e) {
+                responseObserver.onError(Status.INTERNAL.withDescription(e.toString()).asRuntimeException());
+            }
+        };
+        if (delay > 0) {
+            scheduler.schedule(reply, delay, TimeUnit.NANOSECONDS);
+        } else {
+            reply.run();
+        }
+    }
+
+    private void reject(OperationType type, StreamObserver<?> responseObserver) {
+        calls.get(type).incrementAndGet();
+        Runnable reply = () -> responseObserver.onError(Status.ABORTED.withDescription("Transaction has been aborted. Please retry.").asRuntimeException());
+        long delay = latency(type);
+        if (delay > 0) {
+            scheduler.schedule(reply, delay, TimeUnit.NANOSECONDS);
+        } else {
+            reply.run();
+        }
+    }
+
+    private long latency(OperationType type) {
+        return Math.max(0, latencies.get(type.ordinal()).getAsLong());
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+        scheduler.shutdownNow();
+    }
+}
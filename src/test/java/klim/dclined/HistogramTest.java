@@ -0,0 +1,53 @@
+package klim.dclined;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long value : new long[]{0, 1, 63, 64, 127, 128, 1000, 123456789, 1L << 40}) {
+            int index = Histogram.indexOf(value);
+            assertTrue(Histogram.highestValueAt(index) >= value);
+            if (index > 0) {
+                assertTrue(Histogram.highestValueAt(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_500, histogram.getMean(), 0.1);
+
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue(p50 >= 5_000_000 && p50 <= 5_000_000 * 65 / 64, "p50=" + p50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 9_900_000 && p99 <= 9_900_000 * 65 / 64, "p99=" + p99);
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testClampingAndReset() {
+        Histogram histogram = new Histogram(1000);
+        histogram.record(-5);
+        histogram.record(5000);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
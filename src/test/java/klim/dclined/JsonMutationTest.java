@@ -0,0 +1,72 @@
+package klim.dclined;
+
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphProto.Mutation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonMutationTest {
+
+    @Test
+    public void testSerialisesWithGsonAnnotations() {
+        ByteString json = AbstractClient.toJson(new TransactionalityTest.Person("starmaker@mail.com"));
+        assertEquals("{\"person.email\":\"starmaker@mail.com\"}", json.toStringUtf8());
+    }
+
+    @Test
+    public void testObjectsAreSentAsJsonAndStringsAsNQuads() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            List<Mutation> mutations = new ArrayList<>();
+            server.setMutationResponse((Mutation mutation) -> {
+                mutations.add(mutation);
+                return emptyMap();
+            });
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                client.setObject(new TransactionalityTest.Person("starmaker@mail.com")).join();
+                client.set("<0x1> <person.email> \"starmaker@mail.com\" .").join();
+
+                assertEquals("{\"person.email\":\"starmaker@mail.com\"}", mutations.get(0).getSetJson().toStringUtf8());
+                assertTrue(mutations.get(1).getSetJson().isEmpty());
+                assertFalse(mutations.get(1).getSetNquads().isEmpty());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSplitsIntoChunks() {
+        List<TransactionalityTest.Person> people = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            people.add(new TransactionalityTest.Person("person" + i + "@mail.com"));
+        }
+
+        Iterator<TransactionalityTest.Person> iterator = people.iterator();
+        List<String> chunks = new ArrayList<>();
+        ByteString chunk;
+        while ((chunk = AbstractClient.nextJsonChunk(iterator, 100)) != null) {
+            chunks.add(chunk.toStringUtf8());
+        }
+
+        assertEquals(4, chunks.size());
+        assertEquals("[{\"person.email\":\"person0@mail.com\"},{\"person.email\":\"person1@mail.com\"},{\"person.email\":\"person2@mail.com\"}]",
+                chunks.get(0));
+        assertEquals("[{\"person.email\":\"person9@mail.com\"}]", chunks.get(3));
+    }
+
+    @Test
+    public void testEmptyIterable() {
+        assertNull(AbstractClient.nextJsonChunk(emptyList().iterator(), 100));
+        assertEquals("[null,1]", AbstractClient.nextJsonChunk(asList(null, 1).iterator(), 100).toStringUtf8());
+    }
+}
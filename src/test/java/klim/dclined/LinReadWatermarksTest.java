@@ -0,0 +1,66 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.LinRead;
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinReadWatermarksTest {
+
+    @Test
+    public void testMergeKeepsHighestIndexPerGroup() {
+        LinReadWatermarks watermarks = new LinReadWatermarks();
+        watermarks.merge(LinRead.newBuilder().putIds(1, 10).putIds(2, 5).build());
+        watermarks.merge(LinRead.newBuilder().putIds(1, 7).putIds(3, 1).build());
+
+        LinRead linRead = watermarks.get();
+        assertEquals(LinRead.Sequencing.CLIENT_SIDE, linRead.getSequencing());
+        assertEquals(10, linRead.getIdsOrThrow(1));
+        assertEquals(5, linRead.getIdsOrThrow(2));
+        assertEquals(1, linRead.getIdsOrThrow(3));
+    }
+
+    @Test
+    public void testStaleLinReadDoesNotReplaceWatermarks() {
+        LinReadWatermarks watermarks = new LinReadWatermarks();
+        watermarks.merge(LinRead.newBuilder().putIds(1, 10).build());
+        LinRead before = watermarks.get();
+        watermarks.merge(LinRead.newBuilder().putIds(1, 9).build());
+        watermarks.merge(LinRead.getDefaultInstance());
+        assertSame(before, watermarks.get());
+    }
+
+    @Test
+    public void testQueriesCarryObservedWatermarks() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            List<LinRead> sent = new ArrayList<>();
+            server.setQueryResponse((Request request) -> {
+                sent.add(request.getLinRead());
+                return "{}";
+            });
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                client.query("{ q(func: uid(0x1)) { uid } }", Object.class).join();
+                assertEquals(0, sent.get(0).getIdsCount());
+
+                List<CompletableFuture<?>> mutations = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    mutations.add(client.set("<0x" + i + "> <name> \"x\" ."));
+                }
+                CompletableFuture.allOf(mutations.toArray(new CompletableFuture<?>[0])).join();
+
+                client.newTransaction().query("{ q(func: uid(0x1)) { uid } }", Object.class).join();
+                assertEquals(LinRead.Sequencing.CLIENT_SIDE, sent.get(1).getSequencing());
+                assertEquals(3, sent.get(1).getIdsOrThrow(1));
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import com.google.gson.JsonElement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Closed loop load generator: each of the concurrent workers issues the next operation as soon as the previous one
+ * completes, picking reads, writes and upserts at random according to the configured mix. Example usage:
+ * <pre>
+ *     LoadTestReport report = new LoadTest(client)
+ *             .query("{ q(func: has(person.email), first: 10) { uid person.email } }")
+ *             .nQuads(() -&gt; "_:person &lt;person.email&gt; \"" + UUID.randomUUID() + "\" .")
+ *             .mix(80, 15, 5)
+ *             .concurrency(32)
+ *             .duration(30, TimeUnit.SECONDS)
+ *             .run();
+ * </pre>
+ * Pointed at a {@link FakeDgraphServer} it measures the client side costs alone; {@link #main(String[])} does exactly that.
+ * Upserts query, mutate and commit within one transaction and are counted as aborted when the commit is rejected.
+ *
+ * @author Michail Klimenkov
+ */
+public class LoadTest {
+
+    public enum Workload {
+        READ, WRITE, UPSERT
+    }
+
+    private final DClined client;
+    private String query = "{ q(func: has(name), first: 10) { uid name } }";
+    private Supplier<String> nQuads = () -> "_:node <name> \"" + ThreadLocalRandom.current().nextLong() + "\" .";
+    private final int[] weights = {80, 15, 5};
+    private int concurrency = 16;
+    private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+
+    public LoadTest(DClined client) {
+        this.client = client;
+    }
+
+    /**
+     * Query used by reads and upserts.
+     */
+    public LoadTest query(String query) {
+        this.query = query;
+        return this;
+    }
+
+    /**
+     * Supplier of nquads set by writes and upserts, called once per operation.
+     */
+    public LoadTest nQuads(Supplier<String> nQuads) {
+        this.nQuads = nQuads;
+        return this;
+    }
+
+    /**
+     * Relative weights of the workloads, defaults to 80/15/5.
+     */
+    public LoadTest mix(int read, int write, int upsert) {
+        if (read < 0 || write < 0 || upsert < 0 || read + write + upsert == 0) {
+            throw new IllegalArgumentException("Weights must be non negative with positive sum");
+        }
+        weights[Workload.READ.ordinal()] = read;
+        weights[Workload.WRITE.ordinal()] = write;
+        weights[Workload.UPSERT.ordinal()] = upsert;
+        return this;
+    }
+
+    /**
+     * Number of operations in flight, defaults to 16.
+     */
+    public LoadTest concurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * How long to run the test, defaults to 10 seconds.
+     */
+    public LoadTest duration(long duration, TimeUnit unit) {
+        this.durationNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Runs the test, blocking until the configured duration elapses and all operations in flight complete.
+     *
+     * @return report
+     */
+    public LoadTestReport run() throws InterruptedException {
+        LoadTestReport report = new LoadTestReport();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, (Runnable r) -> {
+            Thread thread = new Thread(r, "dclined-load-test");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        List<Future<?>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(workers.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    execute(pick(), report);
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load test worker failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        report.setElapsed(System.nanoTime() - start);
+        return report;
+    }
+
+    private Workload pick() {
+        int total = weights[0] + weights[1] + weights[2];
+        int ticket = ThreadLocalRandom.current().nextInt(total);
+        for (Workload workload : Workload.values()) {
+            ticket -= weights[workload.ordinal()];
+            if (ticket < 0) {
+                return workload;
+            }
+        }
+        return Workload.READ;
+    }
+
+    private void execute(Workload workload, LoadTestReport report) {
+        long start = System.nanoTime();
+        try {
+            switch (workload) {
+                case READ:
+                    client.query(query, JsonElement.class).join();
+                    break;
+                case WRITE:
+                    client.set(nQuads.get()).join();
+                    break;
+                case UPSERT:
+                    Transaction transaction = client.newTransaction();
+                    try {
+                        transaction.query(query, JsonElement.class)
+                                .thenCompose((JsonElement found) -> transaction.set(nQuads.get()))
+                                .thenCompose((uids) -> transaction.commit())
+                                .join();
+                    } catch (CompletionException e) {
+                        transaction.abort();
+                        throw e;
+                    }
+                    break;
+            }
+            report.record(workload, System.nanoTime() - start);
+        } catch (CompletionException e) {
+            report.recordFailure(workload, e.getCause() instanceof TransactionAbortedException);
+        }
+    }
+
+    /**
+     * Runs the default workload against {@link FakeDgraphServer} with log-normal latencies and 1% of aborted commits.
+     *
+     * @param args - optional concurrency and duration in seconds
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setLatency(OperationType.QUERY, FakeDgraphServer.logNormal(500, TimeUnit.MICROSECONDS, 0.5));
+            server.setLatency(OperationType.MUTATE, FakeDgraphServer.logNormal(1, TimeUnit.MILLISECONDS, 0.5));
+            server.setLatency(OperationType.COMMIT, FakeDgraphServer.logNormal(1, TimeUnit.MILLISECONDS, 0.5));
+            server.setAbortRate(0.01);
+            server.setQueryResponse((request) -> "{\"q\":[{\"uid\":\"0x1\",\"name\":\"starmaker\"}]}");
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                System.out.println(new LoadTest(client).concurrency(concurrency).duration(seconds, TimeUnit.SECONDS).run());
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 Michail Klimenkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package klim.dclined;
+
+import klim.dclined.LoadTest.Workload;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outcome of a {@link LoadTest}: throughput, failures and latency histograms of successful operations per workload.
+ *
+ * @author Michail Klimenkov
+ */
+public class LoadTestReport {
+
+    private final Histogram[] latencies = new Histogram[Workload.values().length];
+    private final AtomicLong[] failures = new AtomicLong[Workload.values().length];
+    private final AtomicLong[] aborts = new AtomicLong[Workload.values().length];
+    private volatile long elapsedNanos;
+
+    LoadTestReport() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+            failures[i] = new AtomicLong();
+            aborts[i] = new AtomicLong();
+        }
+    }
+
+    void record(Workload workload, long nanos) {
+        latencies[workload.ordinal()].record(nanos);
+    }
+
+    void recordFailure(Workload workload, boolean aborted) {
+        (aborted ? aborts : failures)[workload.ordinal()].incrementAndGet();
+    }
+
+    void setElapsed(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @param workload
+     * @return latency histogram of successful operations in nanoseconds
+     */
+    public Histogram getLatency(Workload workload) {
+        return latencies[workload.ordinal()];
+    }
+
+    /**
+     * @param workload
+     * @return number of successful operations
+     */
+    public long getCount(Workload workload) {
+        return latencies[workload.ordinal()].getCount();
+    }
+
+    /**
+     * @param workload
+     * @return number of operations failed for reasons other than transaction conflicts
+     */
+    public long getFailures(Workload workload) {
+        return failures[workload.ordinal()].get();
+    }
+
+    /**
+     * @param workload
+     * @return number of operations rejected because of transaction conflicts
+     */
+    public long getAborts(Workload workload) {
+        return aborts[workload.ordinal()].get();
+    }
+
+    /**
+     * @param workload
+     * @return successful operations per second
+     */
+    public double getThroughput(Workload workload) {
+        return elapsedNanos == 0 ? 0 : getCount(workload) * 1e9 / elapsedNanos;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format("%-8s %10s %8s %8s %10s %10s %10s %10s %10s %10s%n",
+                "workload", "count", "failed", "aborted", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+        for (Workload workload : Workload.values()) {
+            Histogram latency = getLatency(workload);
+            report.append(String.format("%-8s %10d %8d %8d %10.1f %10d %10d %10d %10d %10d%n",
+                    workload, latency.getCount(), getFailures(workload), getAborts(workload), getThroughput(workload),
+                    micros(latency.getValueAtPercentile(50)), micros(latency.getValueAtPercentile(90)),
+                    micros(latency.getValueAtPercentile(99)), micros(latency.getValueAtPercentile(99.9)),
+                    micros(latency.getMax())));
+        }
+        return report.append(String.format("elapsed %d ms", getElapsed(TimeUnit.MILLISECONDS))).toString();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
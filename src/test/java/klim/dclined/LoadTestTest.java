@@ -0,0 +1,42 @@
+package klim.dclined;
+
+import klim.dclined.LoadTest.Workload;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadTestTest {
+
+    @Test
+    public void testRunsMixedWorkloadAgainstFakeServer() throws InterruptedException {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setLatency(OperationType.QUERY, FakeDgraphServer.uniform(100, 300, TimeUnit.MICROSECONDS));
+            server.setAbortRate(0.2);
+            server.setQueryResponse((request) -> "{\"q\":[{\"uid\":\"0x1\"}]}");
+
+            DClined client = new DClined(server.newChannel());
+            InMemoryMetrics metrics = new InMemoryMetrics();
+            client.setMetricsListener(metrics);
+            try {
+                LoadTestReport report = new LoadTest(client)
+                        .mix(50, 25, 25)
+                        .concurrency(4)
+                        .duration(300, TimeUnit.MILLISECONDS)
+                        .run();
+
+                for (Workload workload : Workload.values()) {
+                    assertTrue(report.getCount(workload) > 0, workload.name());
+                    assertEquals(0, report.getFailures(workload), workload.name());
+                }
+                assertTrue(report.getAborts(Workload.WRITE) + report.getAborts(Workload.UPSERT) > 0);
+                assertTrue(report.getLatency(Workload.READ).getValueAtPercentile(50) >= TimeUnit.MICROSECONDS.toNanos(100));
+                assertEquals(server.getCalls(OperationType.QUERY), metrics.getRoundTrip(OperationType.QUERY).getCount());
+                assertTrue(report.toString().startsWith("workload"));
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
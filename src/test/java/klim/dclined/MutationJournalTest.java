@@ -0,0 +1,232 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.Mutation;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MutationJournalTest {
+
+    private DClined client;
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        client = new DClined(ManagedChannelBuilder.forAddress("localhost", 9080).usePlaintext().build());
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testReplaysAcrossSegmentsAndCompacts() throws Exception {
+        List<String> replayed = Collections.synchronizedList(new ArrayList<>());
+        try (MutationJournal journal = open(collect(replayed))) {
+            List<CompletableFuture<Void>> acks = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                acks.add(journal.set("<0x" + i + "> <name> \"" + i + "\" ."));
+            }
+            CompletableFuture.allOf(acks.toArray(new CompletableFuture[0])).get();
+            awaitDrained(journal);
+        }
+
+        assertEquals(100, replayed.size());
+        assertEquals("<0x0> <name> \"0\" .", replayed.get(0));
+        assertEquals("<0x99> <name> \"99\" .", replayed.get(99));
+        assertTrue(segments() <= 1);
+
+        List<String> again = Collections.synchronizedList(new ArrayList<>());
+        try (MutationJournal journal = open(collect(again))) {
+            Thread.sleep(100);
+            assertTrue(journal.isDrained());
+        }
+        assertTrue(again.isEmpty());
+    }
+
+    @Test
+    public void testKeepsMutationsWhileUnavailable() throws Exception {
+        AtomicBoolean available = new AtomicBoolean(false);
+        List<String> replayed = Collections.synchronizedList(new ArrayList<>());
+        Function<Mutation, CompletableFuture<?>> sender = (Mutation mutation) -> {
+            if (!available.get()) {
+                CompletableFuture<?> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new StatusRuntimeException(Status.UNAVAILABLE));
+                return failed;
+            }
+            return collect(replayed).apply(mutation);
+        };
+
+        try (MutationJournal journal = open(sender)) {
+            for (int i = 0; i < 10; i++) {
+                journal.del("<0x" + i + "> * * .").get();
+            }
+            Thread.sleep(100);
+            assertFalse(journal.isDrained());
+        }
+        assertTrue(replayed.isEmpty());
+
+        available.set(true);
+        try (MutationJournal journal = open(sender)) {
+            awaitDrained(journal);
+        }
+        assertEquals(10, replayed.size());
+        assertEquals("<0x9> * * .", replayed.get(9));
+    }
+
+    @Test
+    public void testRetriesOnlyFailedCopyOfIdenticalMutations() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        List<String> replayed = Collections.synchronizedList(new ArrayList<>());
+        Function<Mutation, CompletableFuture<?>> sender = (Mutation mutation) -> {
+            if (calls.incrementAndGet() == 2) {
+                CompletableFuture<?> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new StatusRuntimeException(Status.UNAVAILABLE));
+                return failed;
+            }
+            return collect(replayed).apply(mutation);
+        };
+
+        try (MutationJournal journal = open(sender)) {
+            // appended before the next sync, so replayed as one batch
+            CompletableFuture.allOf(journal.set("<0x1> <name> \"x\" ."), journal.set("<0x1> <name> \"x\" ."),
+                    journal.set("<0x2> <name> \"y\" .")).get();
+            awaitDrained(journal);
+        }
+        assertEquals(asList("<0x1> <name> \"x\" .", "<0x1> <name> \"x\" .", "<0x2> <name> \"y\" ."), replayed);
+    }
+
+    @Test
+    public void testSkipsUnparseableRecord() throws Exception {
+        try (MutationJournal journal = open((Mutation mutation) -> new CompletableFuture<>())) {
+            journal.set("<0x1> <name> \"x\" .").get();
+        }
+        try (FileChannel channel = FileChannel.open(segment(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            byte[] garbage = new byte[header.getInt(0)];
+            Arrays.fill(garbage, (byte) 0xff);
+            CRC32 crc = new CRC32();
+            crc.update(garbage, 0, garbage.length);
+            header.putInt(4, (int) crc.getValue());
+            header.rewind();
+            channel.write(header, 0);
+            channel.write(ByteBuffer.wrap(garbage), 8);
+        }
+
+        List<String> replayed = Collections.synchronizedList(new ArrayList<>());
+        try (MutationJournal journal = open(collect(replayed))) {
+            awaitDrained(journal);
+            journal.set("<0x2> <name> \"y\" .").get();
+            awaitDrained(journal);
+        }
+        assertEquals(Collections.singletonList("<0x2> <name> \"y\" ."), replayed);
+    }
+
+    @Test
+    public void testSkipsCorruptedRecordAtEndOfSyncedData() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CompletableFuture<Void> firstSent = new CompletableFuture<>();
+        List<String> replayed = Collections.synchronizedList(new ArrayList<>());
+        Function<Mutation, CompletableFuture<?>> sender = (Mutation mutation) -> {
+            if (sending.getCount() > 0) {
+                sending.countDown();
+                return firstSent.thenApply((Void v) -> collect(replayed).apply(mutation));
+            }
+            return collect(replayed).apply(mutation);
+        };
+
+        try (MutationJournal journal = open(sender)) {
+            journal.set("<0x1> <name> \"x\" .").get();
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+            journal.set("<0x2> <name> \"y\" .").get();
+            try (FileChannel channel = FileChannel.open(segment(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer length = ByteBuffer.allocate(4);
+                channel.read(length, 0);
+                // checksum of the second record
+                channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), 8 + length.getInt(0) + 4);
+            }
+            firstSent.complete(null);
+            awaitDrained(journal);
+
+            journal.set("<0x3> <name> \"z\" .").get();
+            awaitDrained(journal);
+        }
+        assertEquals(asList("<0x1> <name> \"x\" .", "<0x3> <name> \"z\" ."), replayed);
+    }
+
+    @Test
+    public void testRejectsOversizedMutation() {
+        try (MutationJournal journal = open(collect(new ArrayList<>()))) {
+            StringBuilder nQuads = new StringBuilder();
+            while (nQuads.length() < 1024) {
+                nQuads.append("<0x1> <name> \"x\" .\n");
+            }
+            CompletableFuture<Void> ack = journal.set(nQuads.toString());
+            assertTrue(ack.isCompletedExceptionally());
+        }
+    }
+
+    private MutationJournal open(Function<Mutation, CompletableFuture<?>> sender) {
+        return new MutationJournal(client, sender, directory, 1024, 5, 16, 1);
+    }
+
+    private static Function<Mutation, CompletableFuture<?>> collect(List<String> replayed) {
+        return (Mutation mutation) -> {
+            assertTrue(mutation.getCommitNow());
+            replayed.add(mutation.getSetNquads().isEmpty() ? mutation.getDelNquads().toStringUtf8() : mutation.getSetNquads().toStringUtf8());
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    private static void awaitDrained(MutationJournal journal) throws InterruptedException {
+        for (int i = 0; i < 500 && !journal.isDrained(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(journal.isDrained());
+    }
+
+    private Path segment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".journal")).findFirst().get();
+        }
+    }
+
+    private long segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".journal")).collect(Collectors.counting());
+        }
+    }
+}
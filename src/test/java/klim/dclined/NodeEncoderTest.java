@@ -0,0 +1,124 @@
+package klim.dclined;
+
+import com.google.gson.annotations.SerializedName;
+import io.dgraph.DgraphProto.Mutation;
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.Value;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NodeEncoderTest {
+
+    @DgraphNode
+    static class Person {
+        String uid;
+        @Predicate("person.email")
+        String email;
+        @SerializedName("person.age")
+        int age;
+        @Predicate("person.score")
+        Double score;
+        @Predicate("person.born")
+        Instant born;
+        @Predicate("person.address")
+        Address address;
+        @Predicate("person.nickname")
+        List<String> nicknames;
+        transient String ignored;
+    }
+
+    @DgraphNode
+    static class Address {
+        @Predicate("address.city")
+        private String city;
+
+        Address(String city) {
+            this.city = city;
+        }
+
+        public String getCity() {
+            return city;
+        }
+    }
+
+    @Test
+    public void testNewNodeWithNestedBlankNode() {
+        Person person = new Person();
+        person.email = "starmaker@mail.com";
+        person.age = 42;
+        person.born = Instant.parse("1976-03-01T00:00:00Z");
+        person.address = new Address("London");
+        person.nicknames = Arrays.asList("star", "maker");
+
+        NodeWriter writer = new NodeWriter();
+        assertEquals("_:n0", NodeEncoder.of(Person.class).encode(person, writer));
+
+        List<NQuad> set = writer.getSet();
+        assertEquals(Value.newBuilder().setStrVal("starmaker@mail.com").build(), find(set, "person.email").getObjectValue());
+        assertEquals(42, find(set, "person.age").getObjectValue().getIntVal());
+        assertEquals(Value.ValCase.DATETIME_VAL, find(set, "person.born").getObjectValue().getValCase());
+        assertEquals("_:n1", find(set, "person.address").getObjectId());
+        assertEquals("London", find(set, "address.city").getObjectValue().getStrVal());
+        assertEquals("_:n1", find(set, "address.city").getSubject());
+        assertEquals(2, set.stream().filter((NQuad nQuad) -> nQuad.getPredicate().equals("person.nickname")).count());
+        assertTrue(set.stream().noneMatch((NQuad nQuad) -> nQuad.getPredicate().equals("ignored")));
+        // nulls of new nodes have nothing to delete
+        assertTrue(writer.getDel().isEmpty());
+    }
+
+    @Test
+    public void testNullFieldsOfExistingNodeAreDeleted() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            List<Mutation> mutations = new ArrayList<>();
+            server.setMutationResponse((Mutation mutation) -> {
+                mutations.add(mutation);
+                return emptyMap();
+            });
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                Person person = new Person();
+                person.uid = "<0x2a>";
+                person.email = "starmaker@mail.com";
+                client.setNode(person).join();
+
+                Mutation mutation = mutations.get(0);
+                assertTrue(mutation.getCommitNow());
+                assertEquals("0x2a", find(mutation.getSetList(), "person.email").getSubject());
+                List<String> deleted = new ArrayList<>();
+                for (NQuad nQuad : mutation.getDelList()) {
+                    assertEquals("0x2a", nQuad.getSubject());
+                    assertEquals("_STAR_ALL", nQuad.getObjectValue().getDefaultVal());
+                    deleted.add(nQuad.getPredicate());
+                }
+                assertEquals(Arrays.asList("person.score", "person.born", "person.address", "person.nickname"), deleted);
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testNodeInDefaultPackageWithEscapedPredicate() throws ReflectiveOperationException {
+        NodeWriter writer = new NodeWriter();
+        writer.write(Class.forName("DefaultPackageNode").newInstance());
+        assertEquals("hello", find(writer.getSet(), "say \"hi\" \\ there").getObjectValue().getStrVal());
+    }
+
+    @Test
+    public void testClassWithoutEncoder() {
+        assertThrows(IllegalArgumentException.class, () -> NodeEncoder.of(String.class));
+    }
+
+    private static NQuad find(List<NQuad> nQuads, String predicate) {
+        return nQuads.stream().filter((NQuad nQuad) -> nQuad.getPredicate().equals(predicate)).findFirst()
+                .orElseThrow(() -> new AssertionError("No nquad of " + predicate));
+    }
+}
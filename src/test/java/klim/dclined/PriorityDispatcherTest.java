@@ -0,0 +1,90 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PriorityDispatcherTest {
+
+    @Test
+    public void testQueuedOperationsAreDispatchedByWeight() {
+        PriorityDispatcher dispatcher = new PriorityDispatcher();
+        dispatcher.setMaxInFlight(1);
+        assertTrue(dispatcher.acquire(Priority.BULK).isDone());
+
+        List<Priority> dispatched = Collections.synchronizedList(new ArrayList<>());
+        for (Priority priority : new Priority[]{Priority.BULK, Priority.INTERACTIVE}) {
+            for (int i = 0; i < 16; i++) {
+                assertFalse(dispatcher.acquire(priority).thenRun(() -> dispatched.add(priority)).isDone());
+            }
+        }
+        assertEquals(16, dispatcher.getQueued(Priority.BULK));
+
+        for (int i = 0; i < 32; i++) {
+            dispatcher.release();
+            assertEquals(i + 1, dispatched.size());
+            assertEquals(1, dispatcher.getInFlight());
+        }
+        // the backlog of bulk operations delays interactive ones by a single dispatch at most
+        assertEquals(16, dispatched.subList(0, 17).stream().filter((Priority priority) -> priority == Priority.INTERACTIVE).count());
+    }
+
+    @Test
+    public void testRaisingLimitDrainsQueue() {
+        PriorityDispatcher dispatcher = new PriorityDispatcher();
+        dispatcher.setMaxInFlight(1);
+        dispatcher.acquire(Priority.DEFAULT);
+        CompletableFuture<Long> first = dispatcher.acquire(Priority.DEFAULT);
+        CompletableFuture<Long> second = dispatcher.acquire(Priority.BULK);
+        assertFalse(first.isDone());
+
+        dispatcher.setMaxInFlight(0);
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(3, dispatcher.getInFlight());
+        assertThrows(IllegalArgumentException.class, () -> dispatcher.setMaxInFlight(-1));
+    }
+
+    @Test
+    public void testInteractiveQueriesBypassBulkBacklog() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setLatency(OperationType.QUERY, FakeDgraphServer.fixed(5, TimeUnit.MILLISECONDS));
+            List<String> dispatched = Collections.synchronizedList(new ArrayList<>());
+            server.setQueryResponse((Request request) -> {
+                dispatched.add(request.getQuery());
+                return "{}";
+            });
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                InMemoryMetrics metrics = new InMemoryMetrics();
+                client.setMetricsListener(metrics);
+                client.setMaxInFlight(1);
+
+                List<CompletableFuture<?>> queries = new ArrayList<>();
+                AbstractClient bulk = client.withPriority(Priority.BULK);
+                for (int i = 0; i < 20; i++) {
+                    queries.add(bulk.query("{ bulk(func: uid(0x1)) { uid } }", Object.class));
+                }
+                queries.add(client.newTransaction(Priority.INTERACTIVE).query("{ interactive(func: uid(0x1)) { uid } }", Object.class));
+                CompletableFuture.allOf(queries.toArray(new CompletableFuture<?>[0])).join();
+
+                assertEquals(21, dispatched.size());
+                assertTrue(dispatched.indexOf("{ interactive(func: uid(0x1)) { uid } }") <= 2, dispatched.toString());
+                assertEquals(20, metrics.getQueueTime(Priority.BULK).getCount());
+                assertEquals(1, metrics.getQueueTime(Priority.INTERACTIVE).getCount());
+                assertTrue(metrics.getQueueTime(Priority.BULK).getMax() > metrics.getQueueTime(Priority.INTERACTIVE).getMax());
+                assertEquals(0, client.getDispatcher().getInFlight());
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
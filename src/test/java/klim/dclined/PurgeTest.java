@@ -0,0 +1,95 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.Mutation;
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PurgeTest {
+
+    private static final String QUERY = "query expired($first: int, $after: string) { "
+            + "expired(func: has(session.expires), first: $first, after: $after) { uid } }";
+
+    @Test
+    public void testPurgeDeletesAllSelectedNodes() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            Set<Long> startTimestamps = ConcurrentHashMap.newKeySet();
+            server.setQueryResponse((Request request) -> {
+                startTimestamps.add(request.getStartTs());
+                int after = (int) Uids.parse(request.getVarsOrThrow("$after"));
+                int first = Integer.parseInt(request.getVarsOrThrow("$first"));
+                StringBuilder json = new StringBuilder("{\"expired\":[");
+                for (int i = after + 1; i <= Math.min(2500, after + first); i++) {
+                    json.append(i > after + 1 ? "," : "").append("{\"uid\":\"").append(Uids.format(i)).append("\"}");
+                }
+                return json.append("]}").toString();
+            });
+            Set<String> deleted = ConcurrentHashMap.newKeySet();
+            server.setMutationResponse((Mutation mutation) -> {
+                for (NQuad nQuad : mutation.getDelList()) {
+                    assertEquals("_STAR_ALL", nQuad.getPredicate());
+                    deleted.add(nQuad.getSubject());
+                }
+                return emptyMap();
+            });
+            server.setAbortRate(0.2);
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                List<Long> progress = new ArrayList<>();
+                PurgeResult result = client.purge(QUERY)
+                        .pageSize(1000)
+                        .batchSize(300)
+                        .maxRetries(30)
+                        .onProgress((PurgeResult p) -> {
+                            synchronized (progress) {
+                                progress.add(p.getDeleted());
+                            }
+                        })
+                        .execute()
+                        .join();
+
+                assertEquals(3, result.getPages());
+                assertEquals(2500, result.getSelected());
+                assertEquals(2500, result.getDeleted());
+                assertEquals(2500, deleted.size());
+                // 4 + 4 + 2 batches
+                assertEquals(10, progress.size());
+                assertEquals(2500L, (long) progress.stream().mapToLong(Long::longValue).max().getAsLong());
+                // pages are read at the timestamp assigned to the first one
+                assertEquals(2, startTimestamps.size());
+                assertTrue(startTimestamps.contains(0L));
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testRateLimit() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((Request request) -> request.getVarsOrThrow("$after").equals("0x0")
+                    ? "{\"expired\":[{\"uid\":\"0x1\"},{\"uid\":\"0x2\"},{\"uid\":\"0x3\"},{\"uid\":\"0x4\"}]}"
+                    : "{\"expired\":[]}");
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                long started = System.nanoTime();
+                PurgeResult result = client.purge(QUERY).batchSize(1).rateLimit(20).execute().join();
+                assertEquals(4, result.getDeleted());
+                // first batch goes immediately, the other three wait 50ms each
+                assertTrue(System.nanoTime() - started >= 140_000_000L);
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
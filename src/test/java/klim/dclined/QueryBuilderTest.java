@@ -0,0 +1,98 @@
+package klim.dclined;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static klim.dclined.QueryBlock.block;
+import static klim.dclined.QueryBlock.edge;
+import static klim.dclined.QueryFunction.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryBuilderTest {
+
+    @Test
+    public void testCompilesQueryWithVariables() {
+        QueryTemplate template = peopleByEmail();
+
+        assertEquals("query q($email: string, $first: int = 10) { people(func: eq(person.email, $email), first: $first, orderasc: person.email)"
+                        + " @filter((has(person.username) AND NOT anyofterms(person.username, \"bot \\\"x\\\"\"))) {"
+                        + " uid person.email friend (first: 5) { uid } } }",
+                template.getQuery());
+
+        Query query = template.bind("$email", "starmaker@mail.com");
+        assertEquals(template.getQuery(), query.getQuery());
+        assertEquals(Collections.singletonMap("$email", "starmaker@mail.com"), query.getVariables());
+        assertThrows(IllegalArgumentException.class, () -> template.bind("$name", "starmaker"));
+        // $first has a default, $email does not
+        assertThrows(IllegalArgumentException.class, () -> template.bind("$first", "5"));
+    }
+
+    @Test
+    public void testCompilesQueryWithoutVariables() {
+        QueryTemplate template = new QueryBuilder()
+                .block(block("nodes").func(uid(1L, 0x2aL)).select("uid"))
+                .block(block("total").func(has("person.email")).select("count(uid)"))
+                .compile();
+
+        assertEquals("{ nodes(func: uid(0x1, 0x2a)) { uid } total(func: has(person.email)) { count(uid) } }", template.getQuery());
+        assertThrows(IllegalStateException.class, () -> edge("friend").func(has("name")));
+    }
+
+    @Test
+    public void testStringsAreAlwaysQuotedAndEscaped() {
+        assertEquals("eq(name, \"$x) { uid } q(func: has(secret)\")", eq("name", "$x) { uid } q(func: has(secret)").toString());
+        assertEquals("eq(name, \"a\\r\\n\\tb\\u0000\\\\\")", eq("name", "a\r\n\tb\u0000\\").toString());
+        assertEquals("eq(name, $name)", eq("name", var("$name")).toString());
+        assertThrows(IllegalArgumentException.class, () -> var("$x) { uid }"));
+        assertThrows(IllegalArgumentException.class, () -> uid("0x1) { uid }"));
+        assertEquals("uid(0x1, 0x1f, $u)", uid(1L, "0x1f", var("$u")).toString());
+    }
+
+    @Test
+    public void testBuiltQueriesOfSameShapeShareTemplate() {
+        Query first = peopleNamed("starmaker", 30).build(Collections.singletonMap("$first", "5"));
+        int cached = QueryBuilder.cachedTemplateCount();
+        Query second = peopleNamed("x) { uid } q(func: has(secret)", 31).build(Collections.singletonMap("$first", "5"));
+
+        assertEquals("query q($first: int, $v0: string, $v1: int) { people(func: anyofterms(person.name, $v0), first: $first)"
+                + " @filter(eq(age, $v1)) { uid } }", first.getQuery());
+        assertSame(first.getQuery(), second.getQuery());
+        assertEquals(cached, QueryBuilder.cachedTemplateCount());
+        Map<String, String> variables = new HashMap<>();
+        variables.put("$first", "5");
+        variables.put("$v0", "x) { uid } q(func: has(secret)");
+        variables.put("$v1", "31");
+        assertEquals(variables, second.getVariables());
+
+        Query fractional = peopleNamed("starmaker", 30.5).build(Collections.singletonMap("$first", "5"));
+        assertTrue(fractional.getQuery().contains("$v1: float"), fractional.getQuery());
+        assertThrows(IllegalArgumentException.class, () -> peopleNamed("starmaker", 30).build());
+    }
+
+    private static QueryBuilder peopleNamed(String name, Number age) {
+        return new QueryBuilder()
+                .variable("$first", "int")
+                .block(block("people")
+                        .func(anyOfTerms("person.name", name))
+                        .first(var("$first"))
+                        .filter(eq("age", age))
+                        .select("uid"));
+    }
+
+    private static QueryTemplate peopleByEmail() {
+        return new QueryBuilder()
+                .variable("$email", "string")
+                .variable("$first", "int = 10")
+                .block(block("people")
+                        .func(eq("person.email", var("$email")))
+                        .first(var("$first"))
+                        .orderAsc("person.email")
+                        .filter(and(has("person.username"), not(anyOfTerms("person.username", "bot \"x\""))))
+                        .select("uid", "person.email")
+                        .select(edge("friend").first(5).select("uid")))
+                .compile();
+    }
+}
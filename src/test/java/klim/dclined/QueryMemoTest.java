@@ -0,0 +1,126 @@
+package klim.dclined;
+
+import com.google.gson.reflect.TypeToken;
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryMemoTest {
+
+    private static final String BY_EMAIL = "query q($email: string) { q(func: eq(person.email, $email)) { uid ~friend { uid } } }";
+
+    @Test
+    public void testPredicatesOfQuery() {
+        Set<String> predicates = QueryMemo.predicates(BY_EMAIL);
+        assertTrue(predicates.contains("person.email"));
+        assertTrue(predicates.contains("friend"));
+        assertFalse(predicates.contains("~friend"));
+        assertNull(QueryMemo.predicates("{ q(func: uid(0x1)) { expand(_all_) } }"));
+    }
+
+    @Test
+    public void testIrisArePredicates() {
+        Set<String> predicates = QueryMemo.predicates("{ q(func: has(<schema:name>)) { <http://x/y> ~<http://x/z> } }");
+        assertTrue(predicates.contains("schema:name"));
+        assertTrue(predicates.contains("http://x/y"));
+        assertTrue(predicates.contains("http://x/z"));
+        assertNull(QueryMemo.predicates("{ q(func: has(<schema:name)) { uid } }"));
+    }
+
+    @Test
+    public void testKeysDoNotConfuseVariables() {
+        Map<String, String> joined = new HashMap<>();
+        joined.put("$a", "1, $b=2");
+        Map<String, String> separate = new HashMap<>();
+        separate.put("$a", "1");
+        separate.put("$b", "2");
+        assertNotEquals(QueryMemo.key(BY_EMAIL, joined), QueryMemo.key(BY_EMAIL, separate));
+        assertEquals(QueryMemo.key(BY_EMAIL, separate), QueryMemo.key(BY_EMAIL, new HashMap<>(separate)));
+    }
+
+    @Test
+    public void testRepeatedQueryIsAnsweredFromMemo() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((Request request) -> "{\"q\":[{\"uid\":\"0x1\"}]}");
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                client.setQueryMemoization(true);
+                Transaction transaction = client.newTransaction();
+                query(transaction, "a@mail.com");
+                query(transaction, "a@mail.com");
+                assertEquals(1, server.getCalls(OperationType.QUERY));
+
+                query(transaction, "b@mail.com");
+                assertEquals(2, server.getCalls(OperationType.QUERY));
+
+                // unrelated predicate keeps the memoized responses
+                transaction.set("<0x1> <person.name> \"A\" .").join();
+                query(transaction, "a@mail.com");
+                assertEquals(2, server.getCalls(OperationType.QUERY));
+
+                // reverse edges are read through their predicate
+                transaction.set("<0x1> <friend> <0x2> .").join();
+                query(transaction, "a@mail.com");
+                query(transaction, "b@mail.com");
+                assertEquals(4, server.getCalls(OperationType.QUERY));
+
+                transaction.del("<0x1> * * .").join();
+                query(transaction, "a@mail.com");
+                assertEquals(5, server.getCalls(OperationType.QUERY));
+
+                transaction.commit().join();
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testMemoizationIsOffByDefault() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            DClined client = new DClined(server.newChannel());
+            try {
+                Transaction transaction = client.newTransaction();
+                query(transaction, "a@mail.com");
+                query(transaction, "a@mail.com");
+                assertEquals(2, server.getCalls(OperationType.QUERY));
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testMemoizedQueriesKeepTransactionActive() throws InterruptedException {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            DClined client = new DClined(server.newChannel());
+            try {
+                client.setQueryMemoization(true);
+                client.setTransactionIdleTimeout(100, TimeUnit.MILLISECONDS);
+                Transaction transaction = client.newTransaction();
+                query(transaction, "a@mail.com");
+                for (int i = 0; i < 5; i++) {
+                    Thread.sleep(40);
+                    query(transaction, "a@mail.com");
+                    client.getTransactionTracker().sweep();
+                }
+                assertEquals(1, server.getCalls(OperationType.QUERY));
+                assertEquals(1, client.getOpenTransactionCount());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private static void query(Transaction transaction, String email) {
+        transaction.query(BY_EMAIL, singletonMap("$email", email), TypeToken.get(Object.class)).join();
+    }
+}
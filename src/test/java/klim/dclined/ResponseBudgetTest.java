@@ -0,0 +1,134 @@
+package klim.dclined;
+
+import com.google.gson.reflect.TypeToken;
+import io.dgraph.DgraphProto.Request;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseBudgetTest {
+
+    private static final String QUERY = "query people($first: int, $after: string) { "
+            + "people(func: has(person.email), first: $first, after: $after) { uid person.email } }";
+
+    @Test
+    public void testOversizedResponseFailsFast() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((Request request) -> people(0, 100));
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                client.setMaxResponseBytes(1024);
+                CompletionException ex = assertThrows(CompletionException.class,
+                        () -> client.query(QUERY, People.class).join());
+                assertTrue(ex.getCause() instanceof ResponseTooLargeException);
+                assertEquals(1024, ((ResponseTooLargeException) ex.getCause()).getMaxResponseBytes());
+
+                People people = client.query(QUERY, emptyMap(), TypeToken.get(People.class), 0).join();
+                assertEquals(100, people.people.size());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testOversizedResponseIsPaged() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            List<Long> startTimestamps = new ArrayList<>();
+            server.setQueryResponse((Request request) -> {
+                startTimestamps.add(request.getStartTs());
+                int after = (int) Uids.parse(request.getVarsOrThrow("$after"));
+                int first = Integer.parseInt(request.getVarsOrThrow("$first"));
+                return people(after, (int) Math.min(100, (long) after + first));
+            });
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                People people = client.queryPaged(QUERY, emptyMap(), TypeToken.get(People.class), 1024, 10,
+                        (People stitched, People page) -> {
+                            stitched.people.addAll(page.people);
+                            return stitched;
+                        }).join();
+
+                assertEquals(100, people.people.size());
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(Uids.format(i + 1), people.people.get(i).uid);
+                }
+                // whole query, 10 full pages and an empty one
+                assertEquals(12, startTimestamps.size());
+                assertEquals(1, startTimestamps.subList(2, 12).stream().distinct().count());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testMemoizedOversizedResponseIsPaged() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((Request request) -> {
+                int after = (int) Uids.parse(request.getVarsOrThrow("$after"));
+                int first = Integer.parseInt(request.getVarsOrThrow("$first"));
+                return people(after, (int) Math.min(100, (long) after + first));
+            });
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                client.setQueryMemoization(true);
+                Transaction transaction = client.newTransaction();
+                People stitched = transaction.queryPaged(QUERY, emptyMap(), TypeToken.get(People.class), 0, 10,
+                        (People all, People page) -> all).join();
+                assertEquals(100, stitched.people.size());
+
+                // the whole response is now answered from memo, over the budget
+                People people = transaction.queryPaged(QUERY, emptyMap(), TypeToken.get(People.class), 1024, 10,
+                        (People all, People page) -> {
+                            all.people.addAll(page.people);
+                            return all;
+                        }).join();
+                assertEquals(100, people.people.size());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyMessageSizeFailuresAreTooLarge() {
+        StatusRuntimeException tooLarge = Status.RESOURCE_EXHAUSTED
+                .withDescription("gRPC message exceeds maximum size 1024: 4096").asRuntimeException();
+        assertThrows(ResponseTooLargeException.class,
+                () -> AbstractClient.checkResponseSize(QUERY, null, new CompletionException(tooLarge), 1024));
+
+        StatusRuntimeException quota = Status.RESOURCE_EXHAUSTED.withDescription("Too many requests").asRuntimeException();
+        AbstractClient.checkResponseSize(QUERY, null, new CompletionException(quota), 1024);
+        AbstractClient.checkResponseSize(QUERY, null, Status.RESOURCE_EXHAUSTED.asRuntimeException(), 1024);
+    }
+
+    private static String people(int from, int to) {
+        StringBuilder json = new StringBuilder("{\"people\":[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                json.append(',');
+            }
+            json.append("{\"uid\":\"").append(Uids.format(i + 1)).append("\",\"person.email\":\"person").append(i).append("@mail.com\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    static class People {
+        List<Person> people;
+    }
+
+    static class Person {
+        String uid;
+    }
+}
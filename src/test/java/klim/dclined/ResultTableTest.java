@@ -0,0 +1,122 @@
+package klim.dclined;
+
+import com.google.gson.Gson;
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultTableTest {
+
+    private static final ResultColumns COLUMNS = new ResultColumns()
+            .uids("uid")
+            .longs("ts")
+            .doubles("score")
+            .strings("category");
+
+    @Test
+    public void testDecodeColumns() {
+        String json = "{\"other\": {\"q\": [1, 2]}, \"q\": [\n"
+                + "  {\"uid\": \"0x1f\", \"ts\": 1536000000000, \"score\": 0.25, \"category\": \"news\", \"nested\": {\"a\": [1, {\"b\": \"}\"}]}},\n"
+                + "  {\"uid\": \"0x20\", \"ts\": -7, \"score\": -1.5e-3, \"category\": \"caf\\u00e9 \\\"quoted\\\"\"},\n"
+                + "  {\"uid\": \"0x21\", \"score\": 12, \"category\": \"news\", \"ts\": null},\n"
+                + "  {\"uid\": \"0xffffffffffffffff\", \"ts\": true, \"score\": \"3.5\", \"category\": 42}\n"
+                + "], \"after\": []}";
+        ResultTable table = ColumnarDecoder.decode(ByteString.copyFromUtf8(json), COLUMNS);
+
+        assertEquals(4, table.getRowCount());
+        assertArrayEquals(new long[]{0x1f, 0x20, 0x21, -1L}, table.getLongs("uid"));
+        assertArrayEquals(new long[]{1536000000000L, -7, 0, 1}, table.getLongs("ts"));
+        assertFalse(table.hasValue("ts", 2));
+        assertArrayEquals(new double[]{0.25, -1.5e-3, 12, 3.5}, table.getDoubles("score"));
+        assertArrayEquals(new int[]{0, 1, 0, 2}, table.getCodes("category"));
+        assertArrayEquals(new String[]{"news", "café \"quoted\"", "42"}, table.getDictionary("category"));
+        assertEquals("café \"quoted\"", table.getString("category", 1));
+    }
+
+    @Test
+    public void testLongsKeepAllDigits() {
+        String json = "{\"q\": [{\"ts\": 1234567890123456789}, {\"ts\": -9223372036854775808}, {\"ts\": \"9223372036854775807\"}]}";
+        ResultTable table = ColumnarDecoder.decode(ByteString.copyFromUtf8(json), new ResultColumns().longs("ts"));
+        assertArrayEquals(new long[]{1234567890123456789L, Long.MIN_VALUE, Long.MAX_VALUE}, table.getLongs("ts"));
+    }
+
+    @Test
+    public void testNonNumericStringsInNumericColumnsAreAbsent() {
+        String json = "{\"q\": [{\"ts\": \"2018-01-01\", \"score\": \"2018-01-01T10:00:00Z\"},"
+                + " {\"ts\": \"12\", \"score\": \"1e\"}, {\"ts\": \"-\", \"score\": \"-2.5E1\"}]}";
+        ResultTable table = ColumnarDecoder.decode(ByteString.copyFromUtf8(json), new ResultColumns().longs("ts").doubles("score"));
+
+        assertEquals(3, table.getRowCount());
+        assertFalse(table.hasValue("ts", 0));
+        assertFalse(table.hasValue("score", 0));
+        assertEquals(12, table.getLongs("ts")[1]);
+        assertFalse(table.hasValue("score", 1));
+        assertFalse(table.hasValue("ts", 2));
+        assertEquals(-25.0, table.getDoubles("score")[2]);
+    }
+
+    @Test
+    public void testMissingValuesAndChosenBlock() {
+        String json = "{\"q\": [{\"uid\": \"0x1\"}], \"r\": [{\"uid\": \"0x2\"}, {\"uid\": \"0x3\", \"score\": 1}]}";
+        ResultTable table = ColumnarDecoder.decode(ByteString.copyFromUtf8(json), new ResultColumns()
+                .uids("uid")
+                .doubles("score")
+                .strings("category")
+                .block("r"));
+
+        assertEquals(2, table.getRowCount());
+        assertArrayEquals(new long[]{2, 3}, table.getLongs("uid"));
+        assertTrue(Double.isNaN(table.getDoubles("score")[0]));
+        assertEquals(1.0, table.getDoubles("score")[1]);
+        assertArrayEquals(new int[]{-1, -1}, table.getCodes("category"));
+        assertNull(table.getString("category", 0));
+        assertEquals(0, table.getDictionary("category").length);
+    }
+
+    @Test
+    public void testDoublesMatchJdkParsing() {
+        Random random = new Random(7);
+        int rows = 5000;
+        double[] expected = new double[rows];
+        StringBuilder json = new StringBuilder("{\"q\":[");
+        for (int i = 0; i < rows; i++) {
+            switch (i % 3) {
+                case 0:
+                    expected[i] = random.nextDouble();
+                    break;
+                case 1:
+                    expected[i] = random.nextGaussian() * 1e6;
+                    break;
+                default:
+                    expected[i] = Math.round(random.nextDouble() * 100_000) / 100.0;
+            }
+            json.append(i > 0 ? "," : "").append("{\"score\":").append(new Gson().toJson(expected[i])).append('}');
+        }
+        json.append("]}");
+
+        ResultTable table = ColumnarDecoder.decode(ByteString.copyFromUtf8(json.toString()), new ResultColumns().doubles("score"));
+        assertArrayEquals(expected, table.getDoubles("score"));
+    }
+
+    @Test
+    public void testQueryTable() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((Request request) -> "{\"q\":[{\"uid\":\"0x1\",\"score\":2.5},{\"uid\":\"0x2\",\"score\":3}]}");
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                ResultTable table = client.queryTable("{ q(func: has(score)) { uid score } }", emptyMap(),
+                        new ResultColumns().uids("uid").doubles("score")).join();
+                assertArrayEquals(new long[]{1, 2}, table.getLongs("uid"));
+                assertArrayEquals(new double[]{2.5, 3}, table.getDoubles("score"));
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
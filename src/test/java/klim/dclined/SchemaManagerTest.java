@@ -0,0 +1,71 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.SchemaNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchemaManagerTest {
+
+    @Test
+    public void testParse() {
+        List<SchemaNode> nodes = SchemaParser.parse("# people\n" +
+                "person.email: string @index(hash, term) @upsert .\n" +
+                "<person.friend>: [uid] @reverse @count .\n" +
+                "person.name: string @lang .");
+
+        assertEquals(3, nodes.size());
+
+        SchemaNode email = nodes.get(0);
+        assertEquals("person.email", email.getPredicate());
+        assertEquals("string", email.getType());
+        assertTrue(email.getIndex());
+        assertEquals(asList("hash", "term"), email.getTokenizerList());
+        assertTrue(email.getUpsert());
+
+        SchemaNode friend = nodes.get(1);
+        assertEquals("person.friend", friend.getPredicate());
+        assertEquals("uid", friend.getType());
+        assertTrue(friend.getList());
+        assertTrue(friend.getReverse());
+        assertTrue(friend.getCount());
+
+        assertTrue(nodes.get(2).getLang());
+    }
+
+    @Test
+    public void testRenderRoundTrip() {
+        String schema = "<person.friend>: [uid] @index(hash) @reverse @count @upsert @lang .";
+        SchemaNode node = SchemaParser.parse(schema).get(0);
+        assertEquals(schema, SchemaParser.render(node));
+    }
+
+    @Test
+    public void testMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> SchemaParser.parse("person.email: string @index(hash)"));
+        assertThrows(IllegalArgumentException.class, () -> SchemaParser.parse("person.email: string @unknown ."));
+    }
+
+    @Test
+    public void testDiff() {
+        Map<String, SchemaNode> current = new HashMap<>();
+        for (SchemaNode node : SchemaParser.parse("person.email: string @index(term, hash) @upsert .\n" +
+                "person.name: string .")) {
+            current.put(node.getPredicate(), node);
+        }
+
+        List<SchemaNode> changed = SchemaManager.diff(current, SchemaParser.parse(
+                "person.email: string @index(hash, term) @upsert .\n" +
+                "person.name: string @index(exact) .\n" +
+                "person.age: int ."));
+
+        assertEquals(2, changed.size());
+        assertEquals("person.name", changed.get(0).getPredicate());
+        assertEquals("person.age", changed.get(1).getPredicate());
+    }
+}
@@ -0,0 +1,66 @@
+package klim.dclined;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedDClinedTest {
+
+    @Test
+    public void testMovesFewKeysWhenShardIsAdded() {
+        Map<String, DClined> shards = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            shards.put("shard-" + i, client());
+        }
+        ShardedDClined three = new ShardedDClined(shards);
+        shards.put("shard-3", client());
+        ShardedDClined four = new ShardedDClined(shards);
+
+        Map<DClined, Integer> load = new LinkedHashMap<>();
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String key = "tenant-" + i;
+            DClined before = three.shard(key);
+            DClined after = four.shard(key);
+            assertSame(after, four.shard(key));
+            if (before != after) {
+                moved++;
+                assertSame(shards.get("shard-3"), after);
+            }
+            load.merge(after, 1, Integer::sum);
+        }
+
+        assertTrue(moved > 1_500 && moved < 3_500, "moved " + moved);
+        for (int count : load.values()) {
+            assertTrue(count > 1_500 && count < 3_500, "load " + load.values());
+        }
+        four.close();
+    }
+
+    @Test
+    public void testMergesScatterGatherResults() {
+        try (FakeDgraphServer first = FakeDgraphServer.start(); FakeDgraphServer second = FakeDgraphServer.start()) {
+            first.setQueryResponse((request) -> "{\"people\":[{\"uid\":\"0x1\"}],\"total\":1}");
+            second.setQueryResponse((request) -> "{\"people\":[{\"uid\":\"0x2\"},{\"uid\":\"0x3\"}],\"total\":2}");
+
+            Map<String, DClined> shards = new LinkedHashMap<>();
+            shards.put("first", new DClined(first.newChannel()));
+            shards.put("second", new DClined(second.newChannel()));
+            try (ShardedDClined client = new ShardedDClined(shards)) {
+                JsonObject merged = client.queryAll("{ people(func: has(name)) { uid } }", JsonObject.class).join();
+
+                assertEquals(3, merged.getAsJsonArray("people").size());
+                assertEquals("0x3", merged.getAsJsonArray("people").get(2).getAsJsonObject().get("uid").getAsString());
+                assertEquals(1, merged.get("total").getAsInt());
+            }
+        }
+    }
+
+    private static DClined client() {
+        return new DClined(io.grpc.inprocess.InProcessChannelBuilder.forName("unused").build());
+    }
+}
@@ -0,0 +1,106 @@
+package klim.dclined;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import io.dgraph.DgraphProto.Latency;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlowOperationLogTest {
+
+    @Test
+    public void testOnlyOperationsOverThresholdAreCaptured() {
+        SlowOperationLog log = new SlowOperationLog(10, TimeUnit.MILLISECONDS, (SlowOperation operation) -> {
+        });
+        assertFalse(log.shouldCapture(TimeUnit.MILLISECONDS.toNanos(10) - 1));
+        assertTrue(log.shouldCapture(TimeUnit.MILLISECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void testSampling() {
+        SlowOperationSink sink = (SlowOperation operation) -> {
+        };
+        SlowOperationLog never = new SlowOperationLog(0, TimeUnit.MILLISECONDS, 0, sink);
+        SlowOperationLog half = new SlowOperationLog(0, TimeUnit.MILLISECONDS, 0.5, sink);
+        int captured = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(never.shouldCapture(1));
+            if (half.shouldCapture(1)) {
+                captured++;
+            }
+        }
+        assertTrue(captured > 4_000 && captured < 6_000, "captured " + captured);
+        assertThrows(IllegalArgumentException.class, () -> new SlowOperationLog(0, TimeUnit.MILLISECONDS, 1.5, sink));
+    }
+
+    @Test
+    public void testCaptureRedactsVariablesAndSurvivesFailingSink() {
+        List<SlowOperation> captured = new ArrayList<>();
+        SlowOperationLog log = new SlowOperationLog(0, TimeUnit.MILLISECONDS, captured::add);
+        log.capture(OperationType.QUERY, "query q($email: string) { q(func: eq(email, $email)) { uid } }",
+                Collections.singletonMap("$email", "secret@mail.com"), 7, 10, 20, Latency.getDefaultInstance(), 1, 2, 3);
+
+        SlowOperation operation = captured.get(0);
+        assertEquals(SlowOperationLog.REDACTED, operation.getVariables().get("$email"));
+        assertEquals(7, operation.getStartTs());
+        assertEquals(6, operation.getTotalNanos());
+
+        SlowOperationLog failing = new SlowOperationLog(0, TimeUnit.MILLISECONDS, (SlowOperation op) -> {
+            throw new IllegalStateException("disk full");
+        });
+        failing.capture(OperationType.MUTATE, null, null, 0, 0, 0, Latency.getDefaultInstance(), 0, 0, 0);
+    }
+
+    @Test
+    public void testRingBufferKeepsMostRecentOperations() {
+        RingBufferSink sink = new RingBufferSink(3);
+        assertTrue(sink.getOperations().isEmpty());
+        for (int i = 0; i < 5; i++) {
+            sink.accept(operation(i));
+        }
+        List<SlowOperation> operations = sink.getOperations();
+        assertEquals(3, operations.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 2, operations.get(i).getStartTs());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferSink(0));
+    }
+
+    @Test
+    public void testFileSinkAppendsJsonLines() throws IOException {
+        Path path = Files.createTempFile("slow-operations", ".log");
+        try {
+            try (FileSink sink = new FileSink(path)) {
+                sink.accept(operation(1));
+            }
+            try (FileSink sink = new FileSink(path)) {
+                sink.accept(operation(2));
+            }
+
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            assertEquals(2, lines.size());
+            for (int i = 0; i < 2; i++) {
+                JsonObject json = new Gson().fromJson(lines.get(i), JsonObject.class);
+                assertEquals(i + 1, json.get("startTs").getAsLong());
+                assertEquals("QUERY", json.get("type").getAsString());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static SlowOperation operation(long startTs) {
+        return new SlowOperation(System.currentTimeMillis(), OperationType.QUERY, "{ q(func: uid(0x1)) { uid } }",
+                Collections.emptyMap(), startTs, 1, 1, 0, 0, 0, 0, 0, 0);
+    }
+}
@@ -0,0 +1,80 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.Mutation;
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionPipeliningTest {
+
+    @Test
+    public void testConcurrentOperationsShareStartTimestamp() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setLatency(OperationType.QUERY, FakeDgraphServer.uniform(1, 5, TimeUnit.MILLISECONDS));
+            server.setLatency(OperationType.MUTATE, FakeDgraphServer.uniform(1, 5, TimeUnit.MILLISECONDS));
+            Set<Long> startTimestamps = ConcurrentHashMap.newKeySet();
+            server.setQueryResponse((Request request) -> {
+                startTimestamps.add(request.getStartTs());
+                return "{}";
+            });
+            server.setMutationResponse((Mutation mutation) -> {
+                startTimestamps.add(mutation.getStartTs());
+                return emptyMap();
+            });
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                Transaction transaction = client.newTransaction();
+                List<CompletableFuture<?>> operations = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    operations.add(transaction.set("<0x" + i + "> <name> \"x\" ."));
+                    operations.add(transaction.query("{ q(func: uid(0x" + i + ")) { uid } }", Object.class));
+                }
+                CompletableFuture.allOf(operations.toArray(new CompletableFuture<?>[0])).join();
+                transaction.commit().join();
+
+                Set<Long> expected = new HashSet<>();
+                expected.add(0L);
+                expected.add(transaction.getState().getStartTs());
+                assertEquals(expected, startTimestamps);
+                assertEquals(10, server.getCalls(OperationType.MUTATE));
+                assertEquals(10, server.getCalls(OperationType.QUERY));
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testAbortWaitsForStartTimestamp() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setLatency(OperationType.MUTATE, FakeDgraphServer.fixed(50, TimeUnit.MILLISECONDS));
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                Transaction transaction = client.newTransaction();
+                long started = System.nanoTime();
+                CompletableFuture<?> mutation = transaction.set("<0x1> <name> \"x\" .");
+                transaction.abort().join();
+
+                // sent once the mutation responded with the start timestamp, which may be before its future completes
+                assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50));
+                mutation.join();
+                assertNotEquals(0, transaction.getState().getStartTs());
+                assertEquals(1, server.getCalls(OperationType.ABORT));
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
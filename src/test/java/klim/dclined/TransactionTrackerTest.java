@@ -0,0 +1,105 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionTrackerTest {
+
+    private FakeDgraphServer server;
+    private DClined client;
+
+    @BeforeEach
+    public void setUp() {
+        server = FakeDgraphServer.start();
+        client = new DClined(server.newChannel());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testForgetsFinishedTransactions() {
+        Transaction committed = client.newTransaction();
+        Transaction aborted = client.newTransaction();
+        assertEquals(2, client.getOpenTransactionCount());
+        assertEquals(2, client.getOpenTransactionAges(TimeUnit.NANOSECONDS).length);
+
+        committed.set("<0x1> <name> \"x\" .").thenCompose((uids) -> committed.commit()).join();
+        aborted.abort().join();
+
+        assertEquals(0, client.getOpenTransactionCount());
+    }
+
+    @Test
+    public void testAbortsIdleTransactions() throws InterruptedException {
+        client.setTransactionIdleTimeout(20, TimeUnit.MILLISECONDS);
+        Transaction idle = client.newTransaction();
+        Transaction readOnly = client.newTransaction();
+        idle.set("<0x1> <name> \"x\" .").join();
+        readOnly.query("{ q(func: uid(0x1)) { uid } }", Object.class).join();
+
+        Thread.sleep(50);
+        client.getTransactionTracker().sweep();
+
+        assertEquals(0, client.getOpenTransactionCount());
+        awaitAborts(1);
+    }
+
+    @Test
+    public void testAbortsUnreachableTransactions() throws InterruptedException {
+        abandon();
+        assertEquals(1, client.getOpenTransactionCount());
+
+        for (int i = 0; i < 50 && client.getOpenTransactionCount() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            client.getTransactionTracker().sweep();
+        }
+        assertEquals(0, client.getOpenTransactionCount());
+        awaitAborts(1);
+    }
+
+    @Test
+    public void testSnapshotsAreNotTracked() {
+        List<Long> startTimestamps = Collections.synchronizedList(new ArrayList<>());
+        server.setQueryResponse((Request request) -> {
+            startTimestamps.add(request.getStartTs());
+            return "{}";
+        });
+
+        client.traverse(1, 2, 3, 4, 5, 6, 7, 8).via("friend").batchSize(2).parallelism(4).execute().join();
+        client.purge("{ q(func: has(name), first: $first, after: $after) { uid } }").execute().join();
+        assertEquals(0, client.getOpenTransactionCount());
+
+        // concurrent batches of the traversal waited for the first one to fix the start timestamp
+        assertEquals(0, (long) startTimestamps.get(0));
+        assertEquals(1, startTimestamps.subList(1, 4).stream().distinct().count());
+        assertNotEquals(0, (long) startTimestamps.get(1));
+
+        assertThrows(UnsupportedOperationException.class, () -> client.snapshot().set("<0x1> <name> \"x\" ."));
+    }
+
+    private void abandon() {
+        Transaction transaction = client.newTransaction();
+        transaction.set("<0x1> <name> \"x\" .").join();
+    }
+
+    private void awaitAborts(long expected) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getCalls(OperationType.ABORT) < expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, server.getCalls(OperationType.ABORT));
+    }
+}
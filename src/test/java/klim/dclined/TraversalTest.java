@@ -0,0 +1,126 @@
+package klim.dclined;
+
+import com.google.protobuf.ByteString;
+import io.dgraph.DgraphProto;
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraversalTest {
+
+    @Test
+    public void testLongHashSet() {
+        LongHashSet set = new LongHashSet(2);
+        for (long i = 0; i < 1000; i++) {
+            assertTrue(set.add(i * 31));
+        }
+        assertFalse(set.add(0));
+        assertFalse(set.add(31 * 999));
+        assertTrue(set.contains(31 * 500));
+        assertFalse(set.contains(7));
+        assertEquals(1000, set.size());
+
+        long[] values = set.toArray();
+        Arrays.sort(values);
+        assertEquals(0, values[0]);
+        assertEquals(31 * 999, values[999]);
+    }
+
+    @Test
+    public void testQuery() {
+        Traversal traversal = new Traversal(null, new long[0]).via("friend", "~friend").maxFanOut(10);
+        assertEquals("{ q(func: uid(0x1,0x1f)) { friend (first: 10) { uid } ~friend (first: 10) { uid } } }",
+                traversal.query(new long[]{0x5, 0x1, 0x1f}, 1, 3));
+    }
+
+    @Test
+    public void testNeighbours() {
+        DgraphProto.Response response = DgraphProto.Response.newBuilder()
+                .setJson(ByteString.copyFromUtf8("{\"q\":[{\"friend\":[{\"uid\":\"0x2\"},{\"uid\":\"0x3\"}]},{\"~friend\":[{\"uid\":\"0xa\"}]}]}"))
+                .build();
+        assertArrayEquals(new long[]{0x2, 0x3, 0xa}, Traversal.neighbours(response));
+    }
+
+    @Test
+    public void testExecuteVisitsEachNodeOnceUpToMaxDepth() {
+        // 1 -> 2, 3; 2 -> 1, 4; 3 -> 4; 4 -> 5; 5 -> 1
+        Map<Long, long[]> friends = new HashMap<>();
+        friends.put(1L, new long[]{2, 3});
+        friends.put(2L, new long[]{1, 4});
+        friends.put(3L, new long[]{4});
+        friends.put(4L, new long[]{5});
+        friends.put(5L, new long[]{1});
+
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            List<Long> startTimestamps = Collections.synchronizedList(new ArrayList<>());
+            server.setQueryResponse((Request request) -> {
+                startTimestamps.add(request.getStartTs());
+                String query = request.getQuery();
+                StringBuilder json = new StringBuilder("{\"q\":[");
+                String[] uids = query.substring(query.indexOf("uid(") + 4, query.indexOf("))")).split(",");
+                for (int i = 0; i < uids.length; i++) {
+                    long uid = Uids.parse(uids[i]);
+                    json.append(i > 0 ? "," : "").append("{\"uid\":\"").append(Uids.format(uid)).append("\",\"friend\":[");
+                    long[] edges = friends.getOrDefault(uid, new long[0]);
+                    for (int j = 0; j < edges.length; j++) {
+                        json.append(j > 0 ? "," : "").append("{\"uid\":\"").append(Uids.format(edges[j])).append("\"}");
+                    }
+                    json.append("]}");
+                }
+                return json.append("]}").toString();
+            });
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                TraversalResult shallow = client.traverse(1).via("friend").maxDepth(2).batchSize(1).parallelism(2).execute().join();
+                assertEquals(set(1, 2, 3, 4), set(shallow.getVisited()));
+                assertEquals(3, shallow.getLevels().size());
+                assertEquals(set(2, 3), set(shallow.getLevels().get(1)));
+                assertFalse(shallow.isTruncated());
+                // one batch for the start node, one per node of the second level
+                assertEquals(3, server.getCalls(OperationType.QUERY));
+
+                TraversalResult full = client.traverse(1).via("friend").maxDepth(10).batchSize(2).execute().join();
+                assertEquals(set(1, 2, 3, 4, 5), set(full.getVisited()));
+                assertEquals(4, full.getLevels().size());
+                // levels of 1, 2, 1 and 1 nodes, the last one leading back to visited node 1 only
+                assertEquals(7, server.getCalls(OperationType.QUERY));
+                // the first hop obtains the start timestamp of the snapshot, the others read at it
+                assertEquals(0L, (long) startTimestamps.get(3));
+                assertEquals(1, startTimestamps.subList(4, 7).stream().distinct().count());
+
+                TraversalResult limited = client.traverse(1).via("friend").limit(3).execute().join();
+                assertEquals(3, limited.getVisited().length);
+                assertTrue(limited.isTruncated());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private static Set<Long> set(long... uids) {
+        Set<Long> set = new HashSet<>();
+        for (long uid : uids) {
+            set.add(uid);
+        }
+        return set;
+    }
+
+    @Test
+    public void testUids() {
+        assertEquals(0x1f, Uids.parse("0x1f"));
+        assertEquals(0x1f, Uids.parse("<0x1f>"));
+        assertEquals(31, Uids.parse("31"));
+        assertEquals("0xffffffffffffffff", Uids.format(Uids.parse("0xffffffffffffffff")));
+    }
+}
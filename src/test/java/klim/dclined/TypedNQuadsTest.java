@@ -0,0 +1,78 @@
+package klim.dclined;
+
+import io.dgraph.DgraphProto.NQuad;
+import io.dgraph.DgraphProto.SchemaNode;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TypedNQuadsTest {
+
+    private static Map<String, SchemaNode> schema(String text) {
+        Map<String, SchemaNode> schema = new HashMap<>();
+        for (SchemaNode node : SchemaParser.parse(text)) {
+            schema.put(node.getPredicate(), node);
+        }
+        return schema;
+    }
+
+    @Test
+    public void testEncodesBySchemaType() {
+        Map<String, SchemaNode> schema = schema("person.age: int .\n" +
+                "person.score: float .\n" +
+                "person.active: bool .\n" +
+                "person.name: string @lang .\n" +
+                "person.friend: [uid] .\n" +
+                "person.born: datetime .\n" +
+                "person.location: geo .");
+
+        List<NQuad> nQuads = new TypedNQuads(schema)
+                .nQuad("_:person", "person.age", "42")
+                .nQuad("_:person", "person.score", 4)
+                .nQuad("_:person", "person.active", true)
+                .nQuad("_:person", "person.name", "Michail", "en")
+                .nQuad("_:person", "person.friend", asList("<0x1>", 0x2L))
+                .nQuad("<0x5>", "person.born", Instant.EPOCH)
+                .nQuad("_:person", "person.location", new double[]{-0.12, 51.5})
+                .getNQuads();
+
+        assertEquals(8, nQuads.size());
+        assertEquals(42, nQuads.get(0).getObjectValue().getIntVal());
+        assertEquals(4.0, nQuads.get(1).getObjectValue().getDoubleVal());
+        assertTrue(nQuads.get(2).getObjectValue().getBoolVal());
+        assertEquals("Michail", nQuads.get(3).getObjectValue().getStrVal());
+        assertEquals("en", nQuads.get(3).getLang());
+        assertEquals("0x1", nQuads.get(4).getObjectId());
+        assertEquals("0x2", nQuads.get(5).getObjectId());
+        assertEquals("0x5", nQuads.get(6).getSubject());
+        assertArrayEquals(new byte[]{1, 0, 0, 0, 0x0E, 0x77, (byte) 0x91, (byte) 0xF7, 0, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF},
+                nQuads.get(6).getObjectValue().getDatetimeVal().toByteArray());
+        assertEquals(21, nQuads.get(7).getObjectValue().getGeoVal().size());
+    }
+
+    @Test
+    public void testInfersTypeOfUnknownPredicates() {
+        List<NQuad> nQuads = new TypedNQuads(new HashMap<>())
+                .nQuad("_:a", "count", 5)
+                .nQuad("_:a", "name", "a")
+                .getNQuads();
+
+        assertEquals(5, nQuads.get(0).getObjectValue().getIntVal());
+        assertEquals("a", nQuads.get(1).getObjectValue().getDefaultVal());
+    }
+
+    @Test
+    public void testRejectsValuesNotMatchingSchema() {
+        TypedNQuads nQuads = new TypedNQuads(schema("person.age: int .\nperson.email: string ."));
+
+        assertThrows(IllegalArgumentException.class, () -> nQuads.nQuad("_:a", "person.age", 4.5));
+        assertThrows(IllegalArgumentException.class, () -> nQuads.nQuad("_:a", "person.email", "a@b.c", "en"));
+        assertThrows(IllegalArgumentException.class, () -> nQuads.nQuad("_:a", "person.email", asList("a", "b")));
+    }
+}
@@ -0,0 +1,51 @@
+package klim.dclined;
+
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static klim.dclined.NQuadsFactory.nQuad;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmUpTest {
+
+    @Test
+    public void testConnectsAllChannelsAndRunsQueries() {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((request) -> "{\"q\":[{\"person.email\":\"starmaker@mail.com\"}]}");
+            ChannelPool queries = ChannelPool.create(2, server::newChannel);
+            ChannelPool mutations = ChannelPool.create(1, server::newChannel);
+            DClined client = new DClined(queries, mutations);
+            try {
+                assertFalse(client.isReady());
+                client.warmUp(new WarmUp()
+                        .type(Person.class)
+                        .query("{ q(func: has(person.email)) { person.email } }", JsonObject.class)
+                        .encode(new Person("starmaker@mail.com"))
+                        .encode(nQuad("_:person", "person.email", "starmaker@mail.com"))
+                        .repetitions(3, 10))
+                        .get(5, TimeUnit.SECONDS);
+
+                assertTrue(client.isReady());
+                assertEquals(3, server.getCalls(OperationType.QUERY));
+                assertEquals(0, server.getCalls(OperationType.MUTATE));
+            } catch (Exception e) {
+                fail(e);
+            } finally {
+                client.close();
+            }
+            assertFalse(client.isReady());
+        }
+    }
+
+    private static class Person {
+        @SerializedName("person.email")
+        private final String email;
+
+        Person(String email) {
+            this.email = email;
+        }
+    }
+}
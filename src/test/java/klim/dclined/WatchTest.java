@@ -0,0 +1,134 @@
+package klim.dclined;
+
+import com.google.gson.reflect.TypeToken;
+import io.dgraph.DgraphProto.Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WatchTest {
+
+    private static final String QUERY = "{ q(func: has(counter)) { counter } }";
+
+    @Test
+    public void testWatchesShareOnePollAndSeeOnlyChanges() throws Exception {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            AtomicReference<String> result = new AtomicReference<>("{\"q\":[{\"counter\":1}]}");
+            server.setQueryResponse((Request request) -> result.get());
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                List<Map<String, Object>> first = new CopyOnWriteArrayList<>();
+                List<String> second = new CopyOnWriteArrayList<>();
+                Watch firstWatch = client.watch(QUERY, 10, TimeUnit.MILLISECONDS,
+                        new TypeToken<Map<String, Object>>() {}, first::add);
+                Watch secondWatch = client.watch(QUERY, 20, TimeUnit.MILLISECONDS, TypeToken.get(String.class), second::add);
+                assertEquals(1, client.getWatchedQueryCount());
+
+                await(() -> first.size() == 1 && second.size() == 1);
+                Thread.sleep(100);
+                assertEquals(1, first.size());
+                assertEquals(1, second.size());
+
+                result.set("{\"q\":[{\"counter\":2}]}");
+                await(() -> first.size() == 2 && second.size() == 2);
+                assertEquals("{\"q\":[{\"counter\":2}]}", second.get(1));
+
+                firstWatch.close();
+                secondWatch.close();
+                assertEquals(0, client.getWatchedQueryCount());
+                Thread.sleep(100);
+                long calls = server.getCalls(OperationType.QUERY);
+                Thread.sleep(200);
+                assertEquals(calls, server.getCalls(OperationType.QUERY));
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testUnchangedResultSlowsPollDown() throws Exception {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((Request request) -> "{\"q\":[]}");
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                Watch watch = client.watch(QUERY, 10, TimeUnit.MILLISECONDS, TypeToken.get(String.class), (String s) -> {
+                });
+                Thread.sleep(600);
+                watch.close();
+                long calls = server.getCalls(OperationType.QUERY);
+                assertTrue(calls > 5, "polled " + calls + " times");
+                assertTrue(calls < 30, "polled " + calls + " times");
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testVariablesThatPrintAlikeAreDifferentWatches() throws Exception {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((Request request) -> "{\"q\":[]}");
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                Map<String, String> joined = new HashMap<>();
+                joined.put("$a", "1, $b=2");
+                Map<String, String> separate = new HashMap<>();
+                separate.put("$a", "1");
+                separate.put("$b", "2");
+                Watch first = client.watch(QUERY, joined, 10, TimeUnit.MILLISECONDS, TypeToken.get(String.class), (String s) -> {
+                });
+                Watch second = client.watch(QUERY, separate, 10, TimeUnit.MILLISECONDS, TypeToken.get(String.class), (String s) -> {
+                });
+                assertEquals(2, client.getWatchedQueryCount());
+                first.close();
+                second.close();
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testFasterWatchDuringPollKeepsOnePollChain() throws Exception {
+        try (FakeDgraphServer server = FakeDgraphServer.start()) {
+            server.setQueryResponse((Request request) -> "{\"q\":[]}");
+            server.setLatency(OperationType.QUERY, FakeDgraphServer.fixed(50, TimeUnit.MILLISECONDS));
+
+            DClined client = new DClined(server.newChannel());
+            try {
+                Watch slow = client.watch(QUERY, 1, TimeUnit.SECONDS, TypeToken.get(String.class), (String s) -> {
+                });
+                Thread.sleep(20);
+                Watch fast = client.watch(QUERY, 5, TimeUnit.MILLISECONDS, TypeToken.get(String.class), (String s) -> {
+                });
+                Thread.sleep(500);
+                fast.close();
+                slow.close();
+                long calls = server.getCalls(OperationType.QUERY);
+                assertTrue(calls <= 11, "polled " + calls + " times");
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+}